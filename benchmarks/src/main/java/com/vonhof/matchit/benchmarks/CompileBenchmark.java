@@ -0,0 +1,68 @@
+package com.vonhof.matchit.benchmarks;
+
+import com.vonhof.matchit.Expression;
+import com.vonhof.matchit.ExpressionContext;
+import com.vonhof.matchit.ExpressionFunction;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compiling expressions with sub expressions nested depth levels deep. 
+ * 
+ * compile uses a context where the sub expressions have already been expanded (by earlier compiles) - 
+ * compileContext builds and uses a new context every time.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompileBenchmark {
+    
+    @Param({"1", "4", "16"})
+    public int depth;
+    
+    private ExpressionContext ctxt;
+    private String expression;
+    
+    @Setup
+    public void setup() {
+        ctxt = context(depth);
+        expression = String.format("(?<FIRST>${level%d}) (?<SECOND>${level%d})", depth, depth);
+        ctxt.compile(expression).compile();
+    }
+    
+    static ExpressionContext context(int depth) {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("range", new ExpressionFunction.Range());
+        ctxt.add("level0", "(?<WORD>[a-z]+)_(?<NUM>${range(0,255)})");
+        ctxt.add("level0", "(?<QUOTED>\"[^\"]*\")");
+        for(int i = 1; i <= depth; i++) {
+            ctxt.add("level" + i, String.format("(?<LEVEL%d>${level%d}|[0-9]+)(?:-[a-z]{2})?", i, i - 1));
+        }
+        return ctxt;
+    }
+    
+    @Benchmark
+    public Expression compile() {
+        return ctxt.compile(expression).compile();
+    }
+    
+    @Benchmark
+    public Expression compileContext() {
+        return context(depth).compile(expression).compile();
+    }
+}
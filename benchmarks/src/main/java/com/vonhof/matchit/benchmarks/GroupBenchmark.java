@@ -0,0 +1,57 @@
+package com.vonhof.matchit.benchmarks;
+
+import com.vonhof.matchit.ExpressionMatch;
+import com.vonhof.matchit.ExpressionMatcher;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading groups from a match - by index, by name and through sub matches.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GroupBenchmark {
+    
+    private ExpressionMatch match;
+    private int valueIndex;
+    
+    @Setup
+    public void setup() {
+        ExpressionMatcher matcher = MatchBenchmark.context().compile(MatchBenchmark.MANY).matcher(MatchBenchmark.log(1));
+        if (!matcher.find()) {
+            throw new IllegalStateException("Benchmark expression did not match");
+        }
+        match = matcher.toMatchResult();
+        valueIndex = match.groupIndex("VALUE");
+    }
+    
+    @Benchmark
+    public String groupByIndex() {
+        return match.group(valueIndex);
+    }
+    
+    @Benchmark
+    public String groupByName() {
+        return match.group("VALUE");
+    }
+    
+    @Benchmark
+    public String subMatch() {
+        return match.subMatch("date").group("MONTH");
+    }
+}
@@ -0,0 +1,95 @@
+package com.vonhof.matchit.benchmarks;
+
+import com.vonhof.matchit.Expression;
+import com.vonhof.matchit.ExpressionContext;
+import com.vonhof.matchit.ExpressionFunction;
+import com.vonhof.matchit.ExpressionMatcher;
+import com.vonhof.matchit.MatchEngine;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Finding all matches in a log with expressions with few (2) and many (22) groups - using either engine. 
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatchBenchmark {
+    
+    static final String FEW = "(?<KEY>[a-z]+)=(?<VALUE>[0-9]+)";
+    static final String MANY = "(?<TIMESTAMP>${date} ${time}) (?<LEVEL>${level}) (?<KEY>${word})=(?<VALUE>${number})";
+    
+    @Param({"few", "many"})
+    public String groups;
+    
+    @Param({"BACKTRACKING", "LINEAR"})
+    public String engine;
+    
+    private Expression expression;
+    private String text;
+    
+    @Setup
+    public void setup() {
+        ExpressionContext ctxt = context();
+        ctxt.setEngine("LINEAR".equals(engine) ? MatchEngine.LINEAR : MatchEngine.BACKTRACKING);
+        expression = ctxt.compile("few".equals(groups) ? FEW : MANY).compile();
+        text = log(1000);
+    }
+    
+    static ExpressionContext context() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("range", new ExpressionFunction.Range());
+        ctxt.add("date", "(?<YEAR>[0-9]{4})-(?<MONTH>${range(1,12,2)})-(?<DAY>${range(1,31,2)})");
+        ctxt.add("time", "(?<HOUR>${range(0,23,2)}):(?<MINUTE>[0-5][0-9]):(?<SECOND>[0-5][0-9])");
+        ctxt.add("level", "INFO|WARN|ERROR");
+        ctxt.add("word", "(?<WORD>[a-z]+)");
+        ctxt.add("number", "(?<INTEGER>[0-9]+)(?:\\.(?<FRACTION>[0-9]+))?");
+        return ctxt;
+    }
+    
+    static String log(int lines) {
+        String[] levels = {"INFO", "WARN", "ERROR"};
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < lines; i++) {
+            sb.append(String.format("2024-%02d-%02d %02d:%02d:%02d %s status=%d time=%d.%d%n", 
+                                    i % 12 + 1, i % 28 + 1, i % 24, i % 60, (i * 7) % 60, levels[i % 3], 
+                                    200 + i % 5, i * 3, i % 10));
+        }
+        return sb.toString();
+    }
+    
+    @Benchmark
+    public int find() {
+        int found = 0;
+        ExpressionMatcher matcher = expression.matcher(text);
+        while (matcher.find()) {
+            found++;
+        }
+        return found;
+    }
+    
+    @Benchmark
+    public int findLazyGroups() {
+        int found = 0;
+        ExpressionMatcher matcher = expression.matcher(text).useLazyGroups(true);
+        while (matcher.find()) {
+            found++;
+        }
+        return found;
+    }
+}
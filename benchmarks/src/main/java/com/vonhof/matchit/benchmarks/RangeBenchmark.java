@@ -0,0 +1,45 @@
+package com.vonhof.matchit.benchmarks;
+
+import com.vonhof.matchit.ExpressionFunction;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generating range patterns of different widths.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RangeBenchmark {
+    
+    @Param({"10", "1000", "1000000", "1000000000"})
+    public long width;
+    
+    private final ExpressionFunction range = new ExpressionFunction.Range();
+    private String[] args;
+    
+    @Setup
+    public void setup() {
+        args = new String[]{"17", String.valueOf(17 + width)};
+    }
+    
+    @Benchmark
+    public String range() {
+        return range.execute(args);
+    }
+}
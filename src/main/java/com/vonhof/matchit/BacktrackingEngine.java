@@ -0,0 +1,109 @@
+package com.vonhof.matchit;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Engine backed by java.util.regex.Pattern - see MatchEngine.BACKTRACKING
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class BacktrackingEngine extends MatchEngine {
+
+    @Override
+    public EnginePattern compile(String regex) {
+        return new BacktrackingPattern(Pattern.compile(regex));
+    }
+
+    @Override
+    public String toString() {
+        return "BACKTRACKING";
+    }
+    
+    static final class BacktrackingPattern extends EnginePattern {
+        private final Pattern pattern;
+
+        BacktrackingPattern(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public String pattern() {
+            return pattern.pattern();
+        }
+
+        @Override
+        public MatchEngine engine() {
+            return MatchEngine.BACKTRACKING;
+        }
+
+        @Override
+        public EngineMatcher matcher(CharSequence text) {
+            return new BacktrackingMatcher(pattern.matcher(text));
+        }
+    }
+    
+    static final class BacktrackingMatcher extends EngineMatcher {
+        private final Matcher m;
+
+        BacktrackingMatcher(Matcher m) {
+            this.m = m;
+            m.useTransparentBounds(true);
+            m.useAnchoringBounds(false);
+        }
+
+        @Override
+        public boolean find() {
+            return m.find();
+        }
+
+        @Override
+        public boolean find(int start) {
+            return m.find(start);
+        }
+
+        @Override
+        public boolean lookingAt() {
+            return m.lookingAt();
+        }
+
+        @Override
+        public EngineMatcher region(int start, int end) {
+            m.region(start, end);
+            return this;
+        }
+
+        @Override
+        public EngineMatcher reset() {
+            m.reset();
+            return this;
+        }
+
+        @Override
+        public EngineMatcher reset(CharSequence text) {
+            m.reset(text);
+            return this;
+        }
+
+        @Override
+        public boolean hitEnd() {
+            return m.hitEnd();
+        }
+
+        public int start(int group) {
+            return m.start(group);
+        }
+
+        public int end(int group) {
+            return m.end(group);
+        }
+
+        public String group(int group) {
+            return m.group(group);
+        }
+
+        public int groupCount() {
+            return m.groupCount();
+        }
+    }
+}
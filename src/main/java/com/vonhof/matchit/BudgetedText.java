@@ -0,0 +1,75 @@
+package com.vonhof.matchit;
+
+/**
+ * Text that enforces a MatchBudget by counting the characters read from it. Time and interruption is checked every 
+ * CHECK_INTERVAL reads - so the clock is not read for every character.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class BudgetedText implements CharSequence {
+    
+    private static final long CHECK_INTERVAL = 4096;
+    
+    private CharSequence text;
+    private final MatchBudget budget;
+    
+    private long steps;
+    private long nextCheck;
+    private long started;
+
+    BudgetedText(CharSequence text, MatchBudget budget) {
+        this.text = text;
+        this.budget = budget;
+        start();
+    }
+    
+    /**
+     * Replace the text being matched
+     */
+    void reset(CharSequence text) {
+        this.text = text;
+    }
+    
+    /**
+     * Start a new search - resets the budget
+     */
+    void start() {
+        steps = 0;
+        nextCheck = Math.min(CHECK_INTERVAL, budget.maxSteps());
+        started = System.nanoTime();
+    }
+
+    public char charAt(int index) {
+        if (++steps > nextCheck) {
+            check(index);
+        }
+        return text.charAt(index);
+    }
+    
+    private void check(int index) {
+        long elapsed = System.nanoTime() - started;
+        if (steps > budget.maxSteps()) {
+            throw new MatchAbortedException(MatchAbortedException.Reason.STEPS, index, steps - 1, elapsed);
+        }
+        if (elapsed > budget.maxNanos()) {
+            throw new MatchAbortedException(MatchAbortedException.Reason.TIME, index, steps, elapsed);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new MatchAbortedException(MatchAbortedException.Reason.INTERRUPTED, index, steps, elapsed);
+        }
+        nextCheck = Math.min(steps + CHECK_INTERVAL, budget.maxSteps());
+    }
+
+    public int length() {
+        return text.length();
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
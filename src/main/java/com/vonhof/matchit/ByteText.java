@@ -0,0 +1,298 @@
+package com.vonhof.matchit;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Text read directly from bytes - so bytes can be matched without decoding them into a string first. Works with
+ * arrays as well as heap and direct byte buffers. The bytes are not copied - so they must not change while the text
+ * is in use.
+ *
+ * Latin-1 (and thereby ASCII) text maps each byte to a char. UTF-8 text is scanned once when created - pure ASCII is
+ * then read just like Latin-1, anything else is decoded when read using checkpoints (the byte offset of every
+ * CHECKPOINT'th char) to find chars quickly. Malformed UTF-8 is read as U+FFFD - one per invalid byte. Texts may be
+ * read by several threads at once (ie. by Expression.parallelFind).
+ *
+ * Use byteOffset to get the offset of a match (or group) in the bytes:
+ *
+ * ByteText text = ByteText.utf8(buffer);
+ * ExpressionMatcher matcher = expr.matcher(text);
+ * while (matcher.find()) {
+ *     int start = text.byteOffset(matcher.start("NAME"));
+ *     int end = text.byteOffset(matcher.end("NAME"));
+ * }
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public abstract class ByteText implements CharSequence {
+
+    private static final int CHECKPOINT = 32;
+
+    protected final ByteBuffer bytes;
+
+    /**
+     * Index of the first byte in the buffer
+     */
+    protected final int offset;
+
+    private ByteText(ByteBuffer bytes, int offset) {
+        this.bytes = bytes;
+        this.offset = offset;
+    }
+
+    /**
+     * Text from the remaining bytes of the buffer - one char per byte. The position of the buffer is not changed.
+     * @param bytes
+     * @return
+     */
+    public static ByteText latin1(ByteBuffer bytes) {
+        return new Latin1(bytes, bytes.position(), bytes.remaining());
+    }
+
+    public static ByteText latin1(byte[] bytes) {
+        return latin1(bytes, 0, bytes.length);
+    }
+
+    public static ByteText latin1(byte[] bytes, int offset, int length) {
+        return new Latin1(ByteBuffer.wrap(bytes), offset, length);
+    }
+
+    /**
+     * Text from the remaining UTF-8 bytes of the buffer. The position of the buffer is not changed.
+     * @param bytes
+     * @return
+     */
+    public static ByteText utf8(ByteBuffer bytes) {
+        return utf8(bytes, bytes.position(), bytes.remaining());
+    }
+
+    public static ByteText utf8(byte[] bytes) {
+        return utf8(bytes, 0, bytes.length);
+    }
+
+    public static ByteText utf8(byte[] bytes, int offset, int length) {
+        return utf8(ByteBuffer.wrap(bytes), offset, length);
+    }
+
+    private static ByteText utf8(ByteBuffer bytes, int offset, int length) {
+        int end = offset + length;
+        for(int i = offset; i < end; i++) {
+            if (bytes.get(i) < 0) {
+                return new Utf8(bytes, offset, length);
+            }
+        }
+        return new Latin1(bytes, offset, length);
+    }
+
+    /**
+     * Get the index in the bytes (array or buffer) of the char at index. The length of the text maps to the index
+     * after the last byte, -1 maps to -1 (so offsets of groups that did not match can be passed as is). The low
+     * surrogate of a pair maps to the same byte as the high surrogate.
+     * @param index
+     * @return
+     */
+    public abstract int byteOffset(int index);
+
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length()) {
+            throw new IndexOutOfBoundsException(String.format("Sub sequence %d-%d of %d", start, end, length()));
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for(int i = start; i < end; i++) {
+            sb.append(charAt(i));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    private static final class Latin1 extends ByteText {
+        private final int length;
+
+        Latin1(ByteBuffer bytes, int offset, int length) {
+            super(bytes, offset);
+            if (offset < 0 || length < 0 || offset + length > bytes.limit()) {
+                throw new IndexOutOfBoundsException(String.format("Bytes %d-%d of %d",
+                                                                  offset, offset + length, bytes.limit()));
+            }
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(String.format("Index %d of %d", index, length));
+            }
+            return (char) (bytes.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public int byteOffset(int index) {
+            if (index < 0) {
+                return -1;
+            }
+            return offset + Math.min(index, length);
+        }
+    }
+
+    private static final class Utf8 extends ByteText {
+        private final int end;
+        private final int length;
+
+        /**
+         * Byte index of every CHECKPOINT'th char (from the start of the text)
+         */
+        private final int[] checkpoints;
+
+        /**
+         * The code point last read - so reading forward does not start from a checkpoint. Its char index (always the 
+         * first char of the code point) and byte index are packed into one long so threads reading at the same time 
+         * always see both from the same code point.
+         */
+        private volatile long cursor;
+
+        Utf8(ByteBuffer bytes, int offset, int length) {
+            super(bytes, offset);
+            this.end = offset + length;
+            this.cursor = cursor(0, offset);
+
+            int[] points = new int[length / CHECKPOINT + 1];
+            int chars = 0;
+            int i = offset;
+            while (i < end) {
+                int decoded = decode(i);
+                int charCount = Character.charCount(codePoint(decoded));
+                //Checkpoints only at the start of code points - a pair crossing a checkpoint moves it back one char
+                for(int c = 0; c < charCount; c++) {
+                    if ((chars + c) % CHECKPOINT == 0) {
+                        points[(chars + c) / CHECKPOINT] = c == 0 ? i : -i - 1;
+                    }
+                }
+                chars += charCount;
+                i += byteCount(decoded);
+            }
+            this.length = chars;
+            this.checkpoints = points;
+        }
+
+        private static long cursor(int charIndex, int byteIndex) {
+            return ((long) charIndex << 32) | (byteIndex & 0xFFFFFFFFL);
+        }
+
+        private static int codePoint(int decoded) {
+            return decoded & 0xFFFFFF;
+        }
+
+        private static int byteCount(int decoded) {
+            return decoded >>> 24;
+        }
+
+        /**
+         * Decode the code point starting at byte i - returns the code point with its length in bytes in the top 8 bits
+         */
+        private int decode(int i) {
+            int b = bytes.get(i) & 0xFF;
+            if (b < 0x80) {
+                return b | 1 << 24;
+            }
+            int count;
+            int cp;
+            int min;
+            if (b >= 0xC2 && b <= 0xDF) {
+                count = 1;
+                cp = b & 0x1F;
+                min = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                count = 2;
+                cp = b & 0x0F;
+                min = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                count = 3;
+                cp = b & 0x07;
+                min = 0x10000;
+            } else {
+                return 0xFFFD | 1 << 24;
+            }
+            if (i + count >= end) {
+                return 0xFFFD | 1 << 24;
+            }
+            for(int c = 1; c <= count; c++) {
+                int next = bytes.get(i + c) & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    return 0xFFFD | 1 << 24;
+                }
+                cp = (cp << 6) | (next & 0x3F);
+            }
+            if (cp < min || cp > Character.MAX_CODE_POINT || (cp >= 0xD800 && cp <= 0xDFFF)) {
+                return 0xFFFD | 1 << 24;
+            }
+            return cp | (count + 1) << 24;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(String.format("Index %d of %d", index, length));
+            }
+            long at = seek(index);
+            int cp = codePoint(decode((int) at));
+            if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                return (char) cp;
+            }
+            return index == (int) (at >>> 32) ? Character.highSurrogate(cp) : Character.lowSurrogate(cp);
+        }
+
+        /**
+         * Find the code point containing the char at index - returns it as a cursor and moves the cursor to it
+         */
+        private long seek(int index) {
+            long start = cursor;
+            int charIndex = (int) (start >>> 32);
+            int byteIndex = (int) start;
+            if (index < charIndex || index - charIndex >= CHECKPOINT) {
+                int checkpoint = index / CHECKPOINT;
+                int point = checkpoints[checkpoint];
+                charIndex = checkpoint * CHECKPOINT;
+                if (point < 0) {
+                    //Checkpoint is the low surrogate of a pair - start from the high surrogate
+                    charIndex--;
+                    point = -point - 1;
+                }
+                byteIndex = point;
+            }
+            while (true) {
+                int decoded = decode(byteIndex);
+                int next = charIndex + Character.charCount(codePoint(decoded));
+                if (index < next) {
+                    break;
+                }
+                charIndex = next;
+                byteIndex += byteCount(decoded);
+            }
+            long out = cursor(charIndex, byteIndex);
+            if (out != start) {
+                cursor = out;
+            }
+            return out;
+        }
+
+        @Override
+        public int byteOffset(int index) {
+            if (index < 0) {
+                return -1;
+            }
+            if (index >= length) {
+                return end;
+            }
+            return (int) seek(index);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.vonhof.matchit;
+
+import java.util.regex.MatchResult;
+
+/**
+ * Matches an EnginePattern against text. Works like java.util.regex.Matcher - except regions always use transparent 
+ * and non-anchoring bounds (ie. the region only limits where matches are looked for).
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public abstract class EngineMatcher implements MatchResult {
+    
+    /**
+     * Find the next match - see Matcher.find()
+     * @return 
+     */
+    public abstract boolean find();
+    
+    /**
+     * Reset and find the next match starting at index - see Matcher.find(int)
+     * @param start
+     * @return 
+     */
+    public abstract boolean find(int start);
+    
+    /**
+     * Match from the start of the region - see Matcher.lookingAt()
+     * @return 
+     */
+    public abstract boolean lookingAt();
+    
+    /**
+     * Reset and limit matching to the region start (inclusive) to end (exclusive).
+     * @param start
+     * @param end
+     * @return 
+     */
+    public abstract EngineMatcher region(int start, int end);
+    
+    /**
+     * Reset matcher - discarding its state and region.
+     * @return 
+     */
+    public abstract EngineMatcher reset();
+    
+    /**
+     * Reset matcher with new text.
+     * @param text
+     * @return 
+     */
+    public abstract EngineMatcher reset(CharSequence text);
+    
+    /**
+     * Whether the end of input was hit by the last match operation - ie. more input could have changed the result.
+     * @return 
+     */
+    public abstract boolean hitEnd();
+
+    public int start() {
+        return start(0);
+    }
+
+    public int end() {
+        return end(0);
+    }
+
+    public String group() {
+        return group(0);
+    }
+}
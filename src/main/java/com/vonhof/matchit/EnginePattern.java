@@ -0,0 +1,33 @@
+package com.vonhof.matchit;
+
+/**
+ * A regular expression compiled by a MatchEngine. Engine patterns are immutable and thread safe.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public abstract class EnginePattern {
+    
+    /**
+     * The regular expression this pattern was compiled from
+     * @return 
+     */
+    public abstract String pattern();
+    
+    /**
+     * The engine that compiled this pattern (BACKTRACKING or LINEAR)
+     * @return 
+     */
+    public abstract MatchEngine engine();
+    
+    /**
+     * Create matcher for text
+     * @param text
+     * @return 
+     */
+    public abstract EngineMatcher matcher(CharSequence text);
+
+    @Override
+    public String toString() {
+        return pattern();
+    }
+}
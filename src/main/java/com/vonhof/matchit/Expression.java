@@ -1,12 +1,21 @@
 package com.vonhof.matchit;
 
-import java.util.HashSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Expressions are regular expressions on steroids. 
@@ -25,32 +34,41 @@ import java.util.regex.Pattern;
  * For usage see the ExpressionContext class. (This class is equivalent to Pattern - without the public static 
  * methods in std. JAVA regex.)
  * 
+ * Once compiled an expression is immutable and may be shared freely between threads - just like Pattern.
+ * 
  * @author Henrik Hofmeister <@vonhofdk>
  */
 public class Expression {
 
-    private static final Pattern EXPRESSION = Pattern.compile("(?uis)\\$\\{([A-Z][A-Z0-9_]*)(?:\\(([^\\)]*)\\))?\\}");
-    private static final Pattern GROUP_START = Pattern.compile("(?uis)(?<!\\\\)\\((?:\\?\\<([A-Z][A-Z0-9_]+)\\>|(?!\\?))");
-    
     /**
      * The original string expression that this expression was created from.
      */
     protected final String expression;
     
     /**
-     * Maps groups to group names.
+     * Maps groups to group names. Unmodifiable once compiled.
+     */
+    protected Map<Integer,String> groupNames = Collections.emptyMap();
+    
+    /**
+     * Map of all sub expressions in the expression (recursivly). Unmodifiable once compiled.
      */
-    protected final Map<Integer,String> groupNames = new LinkedHashMap<Integer,String>();
+    protected Map<String,Set<Expression>> subExpressions = Collections.emptyMap();
     
     /**
-     * Map of all sub expressions in the expression (recursivly).
+     * Maps group numbers to sub expression ids. Unmodifiable once compiled.
      */
-    protected final Map<String,Set<Expression>> subExpressions = new LinkedHashMap<String, Set<Expression>>();
+    protected Map<Integer,String> groupSubExpression = Collections.emptyMap();
     
     /**
-     * Maps group numbers to sub expression ids.
+     * Group names by index with a constant time name lookup. Shared by all matches of this expression.
      */
-    protected final Map<Integer,String> groupSubExpression = new LinkedHashMap<Integer, String>();
+    protected NameTable groupNameTable = NameTable.EMPTY;
+    
+    /**
+     * Sub expression ids by group index with a constant time id lookup. Shared by all matches of this expression.
+     */
+    protected NameTable subExpressionTable = NameTable.EMPTY;
     
     /**
      * The expression context - contains all other expressions and functions 
@@ -64,9 +82,27 @@ public class Expression {
     protected int groupCount = 0;
     
     /**
-     * The compiled pattern result from this expression.
+     * The expanded expression - shared with matches to resolve sub matches.
+     */
+    Fragment fragment;
+    
+    /**
+     * Fragment loaded from a snapshot - only used if the context has not been modified since (see 
+     * ExpressionContext.load)
      */
-    protected Pattern compiled;
+    private volatile Fragment prepared;
+    private volatile int preparedAt;
+    
+    /**
+     * The parsed expression - see ExpressionParser
+     */
+    private volatile List<ExpressionParser.Node> nodes;
+    
+    /**
+     * The compiled pattern result from this expression. Written last (and only once) when compiling - so reading a 
+     * non-null value guarantees that all the other compiled fields are visible as well.
+     */
+    protected volatile EnginePattern compiled;
     
 
     protected Expression(ExpressionContext ctxt,String expression) {
@@ -75,19 +111,41 @@ public class Expression {
     }
 
     /**
-     * Compile the expression. Must be done before using it (which is done automatically *when* using it)
+     * Compile the expression. Must be done before using it (which is done automatically *when* using it). 
+     * 
+     * Compiling is thread safe and happens only once - afterwards the expression is frozen and can be shared between 
+     * any number of threads.
      * @return 
      */
-    private Expression compile() {
+    public Expression compile() {
         if (compiled == null) {
-            try {
-                String expr = compileSubExpressions(expression);
-            
-                expr = prepareNamedGroups(expr);
-            
-                compiled = Pattern.compile("(?uis)"+expr);
-            } catch(StackOverflowError ex) {
-                //System.err.print("Failed to compile: "+expression);
+            synchronized (this) {
+                if (compiled == null) {
+                    ExpressionListener listener = ctxt.listener();
+                    long start = listener != null ? System.nanoTime() : 0;
+                    try {
+                        Fragment expanded = prepared;
+                        if (expanded == null || preparedAt != ctxt.modifications()) {
+                            expanded = expand();
+                        }
+
+                        fragment = expanded;
+                        groupNames = expanded.groupNames;
+                        subExpressions = expanded.subExpressions;
+                        groupSubExpression = expanded.groupSubExpression;
+                        groupNameTable = expanded.groupNameTable;
+                        subExpressionTable = expanded.subExpressionTable;
+                        groupCount = expanded.groupCount;
+
+                        compiled = LiteralFilter.filter(ctxt.getEngine().compile("(?uis)"+expanded.pattern));
+                        
+                        if (listener != null) {
+                            listener.compiled(this, System.nanoTime() - start, expanded.pattern.length());
+                        }
+                    } catch(StackOverflowError ex) {
+                        //System.err.print("Failed to compile: "+expression);
+                    }
+                }
             }
         }
         return this;
@@ -111,123 +169,120 @@ public class Expression {
     }
 
     /**
-     * Finds and sets up named group matching for this expression.
-     * @param textExpression
+     * Use the already expanded fragment when compiling - as long as the context has not been modified since.
+     * @param fragment
+     * @param modification 
+     */
+    void prepare(Fragment fragment, int modification) {
+        this.preparedAt = modification;
+        this.prepared = fragment;
+    }
+    
+    /**
+     * Get the parsed expression - parsed once and reused whenever the expression is expanded.
      * @return 
      */
-    private String prepareNamedGroups(String textExpression) {
-        StringBuilder sb = new StringBuilder();
-        
-        int offset = 0;
-        int group = 1;
-        Matcher matcher = GROUP_START.matcher(textExpression);
-        while (matcher.find()) {
-            sb.append(textExpression.substring(offset, matcher.start()));
-            String id = matcher.group(1);
-            if (id != null) {
-                groupNames.put(group,id);
-            }
-            group++;
-            sb.append("(");
-            offset = matcher.end();
+    private List<ExpressionParser.Node> nodes() {
+        List<ExpressionParser.Node> out = nodes;
+        if (out == null) {
+            out = ExpressionParser.parse(expression);
+            nodes = out;
         }
-        
-        groupCount = group;
+        return out;
+    }
 
-        sb.append(textExpression.substring(offset));
+    /**
+     * Expand sub expressions, functions and named groups into a fragment. Sub expressions are spliced in from the 
+     * fragments cached in the context - so each sub expression is only expanded once no matter how many 
+     * expressions use it.
+     * @return 
+     */
+    Fragment expand() {
+        Expansion expansion = new Expansion();
+        int groups = expansion.append(nodes(), 1);
         
-        return sb.toString();
+        return new Fragment(this, expansion.sb.toString(), groups, 
+                            expansion.names, expansion.subGroups, expansion.subs, expansion.references, 
+                            expansion.expressionIds, expansion.functionIds);
     }
 
     /**
-     * Compile and preparse sub expression
-     * @param textExpression
-     * @return 
+     * Output of expanding the parsed expression - group numbers are tracked while appending.
      */
-    private String compileSubExpressions(String textExpression) {
-        StringBuilder sb = new StringBuilder();
-        int offset = 0;
-        Matcher matcher = EXPRESSION.matcher(textExpression);
-        while (matcher.find()) {
-            sb.append(textExpression.substring(offset, matcher.start()));
-            String id = matcher.group(1);
-            String args = matcher.group(2);
-            if (args != null) {
-                ExpressionFunction function = ctxt.getFunction(id);
-                if (function == null) {
-                    throw new ExpressionException(String.format("Missing function: %s", id));
-                }
-                
-                String[] parts = args.split(",");
-                sb.append(function.execute(parts));
+    private final class Expansion {
+        private final StringBuilder sb = new StringBuilder();
+        private final Map<Integer,String> names = new LinkedHashMap<Integer, String>();
+        private final Map<Integer,String> subGroups = new LinkedHashMap<Integer, String>();
+        private final Map<String,Set<Expression>> subs = new LinkedHashMap<String, Set<Expression>>();
+        private final Map<String,Fragment.Reference> references = new LinkedHashMap<String, Fragment.Reference>();
+        private final Set<String> expressionIds = new LinkedHashSet<String>();
+        private final Set<String> functionIds = new LinkedHashSet<String>();
 
-            } else {
-                Set<Expression> subExprs = ctxt.get(id);
-                if (subExprs == null) {
-                    throw new ExpressionException(String.format("Missing expression: %s", id));
-                }
-                if (!subExpressions.containsKey(id)) {
-                    subExpressions.put(id, new HashSet<Expression>());
-                }
-                subExpressions.get(id).addAll(subExprs);
-                
-                String tmp = sb.toString();
-                Matcher groupM = GROUP_START.matcher(tmp);
-                int groupOffset = 1;//One for the one we're adding...
-                while(groupM.find()) {
-                    groupOffset++;
-                    
-                }
-                
-                groupSubExpression.put(groupOffset, id);
-                
-                boolean first = true;
-                if (subExprs.size() > 1) {
-                    sb.append("((");
-                    groupOffset++;
-                    for(Expression expr:subExprs) {
-                        if (first) {
-                            first = false;
-                        } else {
-                            sb.append(")|(");
-                        }
-                        //Substring it to avoid (?uis) in the beginning... A bit of a hack ...
-                        sb.append(expr.compile().pattern().substring(6));
-                        
-                        for(Entry<Integer,String> entry:expr.groupNames.entrySet()) {
-                            int subNameOffset = entry.getKey()+groupOffset;
-                            groupNames.put(subNameOffset,entry.getValue());
-                        }
-                        
-                        groupOffset += expr.groupCount;
-                    }
-                    sb.append("))");
-                } else {
-                    sb.append("(");
-                    for(Expression expr:subExprs) {
-                        //Substring it to avoid (?uis) in the beginning... A bit of a hack ...
-                        sb.append(expr.compile().pattern().substring(6));
-                        
-                        for(Entry<Integer,String> entry:expr.groupNames.entrySet()) {
-                            int subNameOffset = entry.getKey()+groupOffset;
-                            groupNames.put(subNameOffset,entry.getValue());
+        /**
+         * Append nodes to the output
+         * @param nodes
+         * @param group The number of the next group in the output
+         * @return The number of the next group after the appended nodes
+         */
+        private int append(List<ExpressionParser.Node> nodes, int group) {
+            for(ExpressionParser.Node node:nodes) {
+                if (node instanceof ExpressionParser.Text) {
+                    sb.append(((ExpressionParser.Text) node).text);
+                } else if (node instanceof ExpressionParser.Group) {
+                    ExpressionParser.Group g = (ExpressionParser.Group) node;
+                    sb.append(g.open);
+                    if (g.capturing) {
+                        if (g.name != null) {
+                            names.put(group, g.name);
                         }
+                        group++;
                     }
+                    group = append(g.children, group);
                     sb.append(")");
+                } else if (node instanceof ExpressionParser.Function) {
+                    ExpressionParser.Function call = (ExpressionParser.Function) node;
+                    ExpressionFunction function = ctxt.getFunction(call.id);
+                    if (function == null) {
+                        throw new ExpressionException(String.format("Missing function: %s", call.id));
+                    }
+                    functionIds.add(call.id);
+                    group = append(ExpressionParser.parseGroups(function.execute(call.args.clone())), group);
+                } else {
+                    group = append(ctxt.reference(((ExpressionParser.Reference) node).id), group);
                 }
-                
             }
-            offset = matcher.end();
+            return group;
         }
+        
+        private int append(Fragment.Reference reference, int group) {
+            String id = reference.id;
+            subGroups.put(group, id);
+            if (!references.containsKey(id)) {
+                references.put(id, reference);
+            }
+            if (!subs.containsKey(id)) {
+                subs.put(id, new LinkedHashSet<Expression>());
+            }
+            subs.get(id).addAll(reference.expressions);
 
-        sb.append(textExpression.substring(offset));
-        return sb.toString();
+            for(Entry<Integer,String> entry:reference.groupNames.entrySet()) {
+                names.put(entry.getKey() + group, entry.getValue());
+            }
+
+            sb.append(reference.pattern);
+
+            expressionIds.addAll(reference.expressionIds);
+            functionIds.addAll(reference.functionIds);
+            return group + reference.groupCount;
+        }
     }
+    
     /**
      * Get the sub expressions found in this expression (recursivly)
      * @return 
      */
     public Map<String, Set<Expression>> getSubExpressions() {
+        compile();
         return subExpressions;
     }
 
@@ -241,14 +296,241 @@ public class Expression {
     }
     
     /**
-     * Create a new matcher to look for this expression in the supplied text.
+     * Get the engine that this expression was compiled with (BACKTRACKING or LINEAR) - see MatchEngine.
+     * @return 
+     */
+    public MatchEngine engine() {
+        compile();
+        return compiled.engine();
+    }
+    
+    /**
+     * Create a new matcher to look for this expression in the supplied text. Use ByteText to match bytes without 
+     * decoding them to a string first.
+     * @param text
+     * @return 
+     */
+    public ExpressionMatcher matcher(CharSequence text) {
+        return matcher(text, ctxt.getBudget());
+    }
+    
+    /**
+     * Create a new matcher to look for this expression in the supplied text - aborting any search that exceeds the 
+     * budget with a MatchAbortedException. See MatchBudget
+     * @param text
+     * @param budget The budget of each search - or null for unlimited
+     * @return 
+     */
+    public ExpressionMatcher matcher(CharSequence text, MatchBudget budget) {
+        compile();
+        if (budget == null) {
+            return new ExpressionMatcher(compiled.matcher(text), this);
+        }
+        BudgetedText budgeted = new BudgetedText(text, budget);
+        return new ExpressionMatcher(compiled.matcher(budgeted), this, budgeted);
+    }
+
+    /**
+     * Find all matches of this expression in the text - collected as columns of group offsets without creating an 
+     * object per match. See ExpressionMatches
+     * @param text
+     * @return 
+     */
+    public ExpressionMatches findAll(CharSequence text) {
+        ExpressionMatcher matcher = lazyMatcher(text);
+        
+        ExpressionMatches out = new ExpressionMatches(this, text);
+        while (matcher.find()) {
+            out.add(matcher);
+        }
+        return out;
+    }
+    
+    /**
+     * Create a matcher (with the budget of the context) that only reads group values when asked for them
      * @param text
      * @return 
      */
-    public ExpressionMatcher matcher(String text) {
+    private ExpressionMatcher lazyMatcher(CharSequence text) {
+        ExpressionMatcher matcher = matcher(text);
+        matcher.useLazyGroups(true);
+        return matcher;
+    }
+    
+    /**
+     * Compile a replacement template for this expression - see ExpressionTemplate. Templates are resolved against the
+     * groups of this expression once - so reuse them when replacing many times.
+     * @param template
+     * @return 
+     */
+    public ExpressionTemplate template(String template) {
         compile();
-        Matcher m = compiled.matcher(text);
-        return new ExpressionMatcher(m, this);
+        return ExpressionTemplate.compile(this, template);
+    }
+    
+    /**
+     * Append text to out with every match replaced by the template. Nothing but the output is created per match.
+     * @param text
+     * @param template A template compiled for this expression
+     * @param out
+     * @throws IOException 
+     */
+    public void replaceAll(CharSequence text, ExpressionTemplate template, Appendable out) throws IOException {
+        replace(text, template, out, true);
+    }
+    
+    /**
+     * Append text to out with the first match replaced by the template.
+     * @param text
+     * @param template A template compiled for this expression
+     * @param out
+     * @throws IOException 
+     */
+    public void replaceFirst(CharSequence text, ExpressionTemplate template, Appendable out) throws IOException {
+        replace(text, template, out, false);
+    }
+    
+    /**
+     * Replace every match in text with the template
+     * @param text
+     * @param template
+     * @return 
+     */
+    public String replaceAll(CharSequence text, String template) {
+        return replace(text, template(template), true);
+    }
+    
+    /**
+     * Replace the first match in text with the template
+     * @param text
+     * @param template
+     * @return 
+     */
+    public String replaceFirst(CharSequence text, String template) {
+        return replace(text, template(template), false);
+    }
+    
+    private String replace(CharSequence text, ExpressionTemplate template, boolean all) {
+        StringBuilder out = new StringBuilder(text.length());
+        try {
+            replace(text, template, out, all);
+        } catch (IOException ex) {
+            //StringBuilder does not throw
+            throw new IllegalStateException(ex);
+        }
+        return out.toString();
+    }
+    
+    private void replace(CharSequence text, ExpressionTemplate template, Appendable out, boolean all) 
+            throws IOException {
+        if (template.expression() != this) {
+            throw new IllegalArgumentException(String.format("Template %s was not compiled for expression %s", 
+                                                             template, expression));
+        }
+        ExpressionMatcher matcher = lazyMatcher(text);
+        int last = 0;
+        while (matcher.find()) {
+            out.append(text, last, matcher.start());
+            template.appendTo(matcher, text, out);
+            last = matcher.end();
+            if (!all) {
+                break;
+            }
+        }
+        out.append(text, last, text.length());
+    }
+
+    /**
+     * Create a new matcher to look for this expression in the supplied stream. Matches can be up to 
+     * ExpressionStreamMatcher.DEFAULT_MAX_MATCH_LENGTH characters long.
+     * @param reader
+     * @return 
+     */
+    public ExpressionStreamMatcher matcher(Reader reader) {
+        return matcher(reader, ExpressionStreamMatcher.DEFAULT_MAX_MATCH_LENGTH);
+    }
+    
+    /**
+     * Create a new matcher to look for this expression in the supplied stream. 
+     * @param reader
+     * @param maxMatchLength The maximum length of a match - determines how much of the stream is kept in memory.
+     * @return 
+     */
+    public ExpressionStreamMatcher matcher(Reader reader, int maxMatchLength) {
+        compile();
+        return new ExpressionStreamMatcher(this, reader, maxMatchLength, ExpressionStreamMatcher.DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * Create a new matcher to look for this expression in the supplied channel. 
+     * @param channel
+     * @param charset
+     * @param maxMatchLength The maximum length of a match - determines how much of the stream is kept in memory.
+     * @return 
+     */
+    public ExpressionStreamMatcher matcher(ReadableByteChannel channel, Charset charset, int maxMatchLength) {
+        Reader reader = Channels.newReader(channel, 
+                                    charset.newDecoder()
+                                        .onMalformedInput(CodingErrorAction.REPLACE)
+                                        .onUnmappableCharacter(CodingErrorAction.REPLACE), 
+                                    -1);
+        return matcher(reader, maxMatchLength);
+    }
+    
+    /**
+     * Create a new matcher to look for this expression in the supplied file. The file is memory mapped and read in 
+     * regions - so files of any size can be matched. Close the matcher when done to release the file.
+     * @param file
+     * @param charset
+     * @param maxMatchLength The maximum length of a match - determines how much of the file is kept in memory.
+     * @return 
+     * @throws IOException 
+     */
+    public ExpressionStreamMatcher matcher(File file, Charset charset, int maxMatchLength) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return matcher(new MappedFileReader(raf.getChannel(), charset), maxMatchLength);
+        } catch (IOException ex) {
+            raf.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Create a scanner that finds all matches of this expression in parallel - see ExpressionScanner.
+     * @return 
+     */
+    public ExpressionScanner scanner() {
+        return new ExpressionScanner(this);
+    }
+    
+    /**
+     * Find all matches of this expression in the text in parallel using the default ExpressionScanner settings. 
+     * Matches are returned in the order they appear in the text.
+     * @param text
+     * @return 
+     */
+    public List<ExpressionMatch> parallelFind(CharSequence text) {
+        return scanner().scan(text);
+    }
+
+    /**
+     * Stream all matches of this expression in the text using the default ExpressionScanner settings - in the order 
+     * they appear. The stream is lazy, and splits the text into parts matched in parallel when made parallel.
+     * @param text
+     * @return 
+     */
+    public Stream<ExpressionMatch> matches(CharSequence text) {
+        return scanner().matches(text);
+    }
+    
+    /**
+     * Stream the text around all matches of this expression - like String.split(regex, -1). See matches
+     * @param text
+     * @return 
+     */
+    public Stream<String> split(CharSequence text) {
+        return scanner().split(text);
     }
 
     @Override
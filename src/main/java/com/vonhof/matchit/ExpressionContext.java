@@ -1,20 +1,65 @@
 package com.vonhof.matchit;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Used to define and store expressions. The context must include all sub expressions and expression functions that
  * you'll use in subsequent expressions.
  * 
+ * The context is thread safe - expressions and functions may be added and compiled from any number of threads.
+ * 
+ * Sub expressions are expanded once and cached as fragments that are spliced into every expression using them. 
+ * Adding an expression or function discards the cached fragments that depend on it - expressions compiled before 
+ * are not affected.
  * 
  * @author Henrik Hofmeister <@vonhofdk>
  */
 public class ExpressionContext {
-    private final Map<String,Set<Expression>> expressions = new HashMap<String, Set<Expression>>();
-    private final Map<String,ExpressionFunction> functions = new HashMap<String, ExpressionFunction>();
+    private final ConcurrentMap<String,Set<Expression>> expressions = new ConcurrentHashMap<String, Set<Expression>>();
+    private final ConcurrentMap<String,ExpressionFunction> functions = new ConcurrentHashMap<String, ExpressionFunction>();
+    private volatile MatchEngine engine = MatchEngine.BACKTRACKING;
+    private volatile MatchBudget budget;
+    private volatile boolean factoring = false;
+    
+    /**
+     * Expanded sub expressions by id
+     */
+    private final ConcurrentMap<String,Fragment.Reference> fragments = new ConcurrentHashMap<String, Fragment.Reference>();
+    
+    /**
+     * Incremented whenever an expression or function is added - used to detect fragments expanded from definitions 
+     * that changed while expanding.
+     */
+    private final AtomicInteger modifications = new AtomicInteger();
+    
+    private final List<ExpressionListener> listeners = new CopyOnWriteArrayList<ExpressionListener>();
+    
+    /**
+     * All listeners combined into one - or null if there are none (so instrumentation costs nothing when not used)
+     */
+    private volatile ExpressionListener listener;
    
     /**
      * Adds sub expressions with id. See Expression for syntax
@@ -24,12 +69,27 @@ public class ExpressionContext {
      */
     public Expression add(String id,String expression) {
         Expression out = new Expression(this,expression);
-        if (!expressions.containsKey(id))
-            expressions.put(id,new HashSet<Expression>());
-        expressions.get(id).add(out);
+        add(id, Collections.singletonList(out));
         return out;
     }
     
+    /**
+     * Add definitions of sub expression id - expressions created by (but not yet added to) this context
+     */
+    void add(String id, Collection<Expression> expressions) {
+        Set<Expression> definitions = this.expressions.get(id);
+        if (definitions == null) {
+            Set<Expression> created = new CopyOnWriteArraySet<Expression>();
+            definitions = this.expressions.putIfAbsent(id, created);
+            if (definitions == null) {
+                definitions = created;
+            }
+        }
+        definitions.addAll(expressions);
+        modifications.incrementAndGet();
+        invalidate(id, false);
+    }
+    
     /**
      * Add expressions function with id. See Expression for syntax
      * @param id
@@ -37,17 +97,307 @@ public class ExpressionContext {
      */
     public void add(String id,ExpressionFunction function) {
         functions.put(id, function);
+        modifications.incrementAndGet();
+        invalidate(id, true);
     }
     
+    /**
+     * Get all the expressions defined for id - or null if none has been added. The returned set is read-only 
+     * and iterates in the order the expressions were added.
+     * @param id
+     * @return 
+     */
     public Set<Expression> get(String id) {
-        return expressions.get(id);
+        Set<Expression> definitions = expressions.get(id);
+        if (definitions == null) {
+            return null;
+        }
+        return Collections.unmodifiableSet(definitions);
+    }
+    
+    /**
+     * Get the ids of all expressions added to this context.
+     * @return 
+     */
+    public Set<String> ids() {
+        return Collections.unmodifiableSet(expressions.keySet());
+    }
+    
+    /**
+     * Get the engine used to compile expressions in this context - see MatchEngine.
+     * @return 
+     */
+    public MatchEngine getEngine() {
+        return engine;
+    }
+    
+    /**
+     * Set the engine used to compile expressions in this context. Only affects expressions that have not yet been 
+     * compiled. Defaults to MatchEngine.BACKTRACKING
+     * @param engine 
+     */
+    public void setEngine(MatchEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Engine can not be null");
+        }
+        this.engine = engine;
+    }
+    
+    /**
+     * Get the budget used by matchers created from this context - or null if unlimited. See MatchBudget
+     * @return 
+     */
+    public MatchBudget getBudget() {
+        return budget;
+    }
+    
+    /**
+     * Set the budget used by matchers created (after this call) from this context. Null means unlimited (the default)
+     * @param budget 
+     */
+    public void setBudget(MatchBudget budget) {
+        this.budget = budget;
+    }
+    
+    /**
+     * Add listener to receive events from expressions and matchers created from this context. Matchers use the 
+     * listeners of the context at the time they are created. See ExpressionListener and ExpressionMetrics
+     * @param listener 
+     */
+    public synchronized void addListener(ExpressionListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can not be null");
+        }
+        listeners.add(listener);
+        updateListener();
+    }
+    
+    public synchronized void removeListener(ExpressionListener listener) {
+        listeners.remove(listener);
+        updateListener();
+    }
+    
+    private void updateListener() {
+        if (listeners.isEmpty()) {
+            listener = null;
+        } else if (listeners.size() == 1) {
+            listener = listeners.get(0);
+        } else {
+            listener = new Listeners(listeners.toArray(new ExpressionListener[listeners.size()]));
+        }
+    }
+    
+    /**
+     * Whether sub expressions with multiple definitions are compiled with their common prefixes factored out - see
+     * setFactoring
+     * @return 
+     */
+    public boolean isFactoring() {
+        return factoring;
+    }
+    
+    /**
+     * Factor common literal prefixes out of sub expressions with multiple definitions. Consecutive definitions sharing
+     * a prefix are compiled as prefix(?:(rest1)|(rest2)) - so the prefix is matched once instead of once per 
+     * definition. The definitions are still tried in the order they were added, groups are numbered as without 
+     * factoring and sub matches of a definition still include its prefix. 
+     * 
+     * Only affects expressions that have not yet been compiled. Defaults to false.
+     * @param factoring 
+     */
+    public void setFactoring(boolean factoring) {
+        if (this.factoring == factoring) {
+            return;
+        }
+        this.factoring = factoring;
+        modifications.incrementAndGet();
+        fragments.clear();
+    }
+    
+    ExpressionListener listener() {
+        return listener;
     }
     
     protected ExpressionFunction getFunction(String id) {
         return functions.get(id);
     }
     
+    /**
+     * Get the expanded fragment for sub expression id - expanding and caching it if needed.
+     * @param id
+     * @return 
+     */
+    Fragment.Reference reference(String id) {
+        Fragment.Reference reference = fragments.get(id);
+        if (reference != null) {
+            return reference;
+        }
+        
+        int modification = modifications.get();
+        
+        Set<Expression> definitions = expressions.get(id);
+        if (definitions == null) {
+            throw new ExpressionException(String.format("Missing expression: %s", id));
+        }
+        
+        List<Fragment> expanded = new ArrayList<Fragment>();
+        for(Expression definition:definitions) {
+            expanded.add(definition.expand());
+        }
+        reference = new Fragment.Reference(id, expanded, factoring);
+        
+        Fragment.Reference existing = fragments.putIfAbsent(id, reference);
+        if (existing != null) {
+            return existing;
+        }
+        
+        //Something was added while expanding - the fragment might be stale so don't keep it around
+        if (modifications.get() != modification) {
+            fragments.remove(id, reference);
+        }
+        return reference;
+    }
+    
+    /**
+     * Discard all cached fragments expanded from the expression or function with id
+     * @param id
+     * @param function 
+     */
+    private void invalidate(String id, boolean function) {
+        for(Entry<String,Fragment.Reference> entry:fragments.entrySet()) {
+            Fragment.Reference reference = entry.getValue();
+            Set<String> ids = function ? reference.functionIds : reference.expressionIds;
+            if (ids.contains(id)) {
+                fragments.remove(entry.getKey(), reference);
+            }
+        }
+    }
+    
+    int modifications() {
+        return modifications.get();
+    }
+    
+    /**
+     * Save all sub expressions in this context - expanded and ready to use - to a snapshot file. See load(File)
+     * @param file
+     * @throws IOException 
+     */
+    public void save(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            save(out);
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Save all sub expressions in this context - expanded and ready to use - to a snapshot. See load(InputStream)
+     * @param out
+     * @throws IOException 
+     */
+    public void save(OutputStream out) throws IOException {
+        ExpressionSnapshot.write(this, new DataOutputStream(new BufferedOutputStream(out)));
+    }
+    
+    /**
+     * Load the sub expressions from a snapshot file created with save(File). The file is memory mapped while loading.
+     * 
+     * The snapshot contains the expanded sub expressions - so nothing is parsed or expanded when loading or when 
+     * compiling expressions using them. Functions are not part of the snapshot - their output is, so they are only 
+     * needed to compile new expressions calling them. 
+     * 
+     * None of the sub expressions in the snapshot may be defined in this context already.
+     * @param file
+     * @throws IOException 
+     */
+    public void load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+    
+    /**
+     * Load the sub expressions from a snapshot created with save(OutputStream). See load(File)
+     * @param in
+     * @throws IOException 
+     */
+    public void load(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > -1) {
+            out.write(buffer, 0, read);
+        }
+        load(ByteBuffer.wrap(out.toByteArray()));
+    }
+    
+    private void load(ByteBuffer buffer) throws IOException {
+        //The whole snapshot is read (and validated) before anything is added
+        List<Fragment.Reference> references = ExpressionSnapshot.read(this, buffer);
+        for(Fragment.Reference reference:references) {
+            add(reference.id, reference.expressions);
+        }
+        
+        int modification = modifications.get();
+        for(Fragment.Reference reference:references) {
+            fragments.put(reference.id, reference);
+            for(Fragment definition:reference.definitions) {
+                definition.expression.prepare(definition, modification);
+            }
+        }
+        
+        //Same as when expanding - drop everything if the context changed while loading
+        if (modifications.get() != modification) {
+            for(Fragment.Reference reference:references) {
+                fragments.remove(reference.id, reference);
+            }
+        }
+    }
+    
     public Expression compile(String expression) {
         return new Expression(this,expression);
     }
+    
+    /**
+     * Compile a set of expressions by id - to be matched against texts together. See ExpressionSet.
+     * @param ids
+     * @return 
+     */
+    public ExpressionSet compileSet(String ... ids) {
+        return compileSet(Arrays.asList(ids));
+    }
+    
+    /**
+     * Compile a set of expressions by id - to be matched against texts together. See ExpressionSet.
+     * @param ids
+     * @return 
+     */
+    public ExpressionSet compileSet(Collection<String> ids) {
+        return new ExpressionSet(this, ids);
+    }
+    
+    private static final class Listeners implements ExpressionListener {
+        private final ExpressionListener[] listeners;
+
+        private Listeners(ExpressionListener[] listeners) {
+            this.listeners = listeners;
+        }
+
+        public void compiled(Expression expression, long nanos, int patternLength) {
+            for(ExpressionListener listener:listeners) {
+                listener.compiled(expression, nanos, patternLength);
+            }
+        }
+
+        public void searched(Expression expression, boolean found, long nanos) {
+            for(ExpressionListener listener:listeners) {
+                listener.searched(expression, found, nanos);
+            }
+        }
+    }
 }
@@ -4,7 +4,7 @@ package com.vonhof.matchit;
  *
  * @author Henrik Hofmeister <@vonhofdk>
  */
-public final class ExpressionException extends RuntimeException {
+public class ExpressionException extends RuntimeException {
 
     public ExpressionException(String msg) {
         super(msg);
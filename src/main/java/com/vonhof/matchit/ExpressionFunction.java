@@ -1,5 +1,15 @@
 package com.vonhof.matchit;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  *
  * @author Henrik Hofmeister <@vonhofdk>
@@ -8,33 +18,354 @@ public interface ExpressionFunction {
     public String execute(String[] args);
     
     
+    /**
+     * Matches integers from-to (inclusive) - optionally zero padded to a minimum width. Takes 2-3 arguments: 
+     * (int from,int to,int width)
+     * 
+     * The range is turned into digit classes - e.g. range(100,249) becomes (?:1[0-9]{2}|2[0-4][0-9]) - so the size of 
+     * the pattern only depends on the amount of digits, not the size of the range.
+     */
     public static class Range implements ExpressionFunction {
 
         public String execute(String[] args) {
             if (args.length < 2)
                 throw new ExpressionException("Range function requires atleast 2 arguments");
-            int from = Integer.valueOf(args[0]);
-            int to = Integer.valueOf(args[1]);
+            long from = Long.valueOf(args[0].trim());
+            long to = Long.valueOf(args[1].trim());
             int width = 1;
             if (args.length > 2) {
-                width = Integer.valueOf(args[2]);
+                width = Integer.valueOf(args[2].trim());
+            }
+            if (from > to) {
+                throw new ExpressionException(String.format("Range function requires from <= to. Got: %s,%s", from, to));
+            }
+            
+            List<String> alternatives = new ArrayList<String>();
+            if (from < 0) {
+                List<String> negatives = new ArrayList<String>();
+                positiveRange(Math.max(1, -to), -from, width, negatives);
+                for(String negative:negatives) {
+                    alternatives.add("-" + negative);
+                }
+            }
+            if (to >= 0) {
+                positiveRange(Math.max(0, from), to, width, alternatives);
             }
             
             StringBuilder sb = new StringBuilder();
             sb.append("(?:");
-            for(int i = from; i <= to;i++) {
-                String num = String.valueOf(i);
-                for(int x = 0; x < width-num.length();x++) {
-                    sb.append("0");
-                }
-                sb.append(num);
-                if (i != to)
+            for(int i = 0; i < alternatives.size(); i++) {
+                if (i > 0)
                     sb.append("|");
+                sb.append(alternatives.get(i));
             }
-            
             sb.append(")");
             return sb.toString();
         }
+        
+        /**
+         * Adds alternatives for from-to (both >= 0). Numbers are split by their amount of digits - numbers shorter 
+         * than width are zero padded.
+         */
+        private static void positiveRange(long from, long to, int width, List<String> out) {
+            width = Math.max(1, width);
+            long limit = pow10(width) - 1;
+            if (from <= limit) {
+                digitRange(pad(from, width), pad(Math.min(to, limit), width), "", out);
+            }
+            
+            int maxDigits = String.valueOf(to).length();
+            for(int digits = width + 1; digits <= maxDigits; digits++) {
+                long start = Math.max(from, pow10(digits - 1));
+                long end = Math.min(to, pow10(digits) - 1);
+                if (start <= end) {
+                    digitRange(String.valueOf(start), String.valueOf(end), "", out);
+                }
+            }
+        }
+        
+        /**
+         * Adds alternatives matching all digit strings between from and to (inclusive). Both must have the same 
+         * length.
+         */
+        private static void digitRange(String from, String to, String prefix, List<String> out) {
+            int common = 0;
+            while (common < from.length() && from.charAt(common) == to.charAt(common)) {
+                common++;
+            }
+            if (common == from.length()) {
+                out.add(prefix + from);
+                return;
+            }
+            
+            prefix += from.substring(0, common);
+            from = from.substring(common);
+            to = to.substring(common);
+            
+            int rest = from.length() - 1;
+            char first = from.charAt(0);
+            char last = to.charAt(0);
+            
+            if (!isAll(from, '0')) {
+                digitRange(from.substring(1), repeat('9', rest), prefix + first, out);
+                first++;
+            }
+            boolean toIsFull = isAll(to, '9');
+            if (!toIsFull) {
+                last--;
+            }
+            if (first <= last) {
+                if (first == '0' && last == '9') {
+                    out.add(prefix + anyDigits(rest + 1));
+                } else {
+                    out.add(prefix + digitClass(first, last) + anyDigits(rest));
+                }
+            }
+            if (!toIsFull) {
+                digitRange(repeat('0', rest), to.substring(1), prefix + to.charAt(0), out);
+            }
+        }
+        
+        /**
+         * Checks if all but the first digit is c
+         */
+        private static boolean isAll(String digits, char c) {
+            for(int i = 1; i < digits.length(); i++) {
+                if (digits.charAt(i) != c) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private static String digitClass(char first, char last) {
+            if (first == last) {
+                return String.valueOf(first);
+            }
+            return "[" + first + "-" + last + "]";
+        }
+        
+        private static String anyDigits(int count) {
+            if (count == 0) {
+                return "";
+            }
+            if (count == 1) {
+                return "[0-9]";
+            }
+            return "[0-9]{" + count + "}";
+        }
+        
+        private static String repeat(char c, int count) {
+            StringBuilder sb = new StringBuilder(count);
+            for(int i = 0; i < count; i++) {
+                sb.append(c);
+            }
+            return sb.toString();
+        }
+        
+        private static String pad(long num, int width) {
+            String out = String.valueOf(num);
+            if (out.length() >= width) {
+                return out;
+            }
+            return repeat('0', width - out.length()) + out;
+        }
+        
+        private static long pow10(int exp) {
+            long out = 1;
+            for(int i = 0; i < exp && out < Long.MAX_VALUE / 10; i++) {
+                out *= 10;
+            }
+            return out;
+        }
     
     }
+    
+    /**
+     * Matches any word of a registered word list. Takes 1 argument: (String list)
+     * 
+     * The words are turned into a trie with common prefixes factored out - e.g. [abc,abd,x] becomes (?:ab[cd]|x) - so
+     * matching costs roughly the length of the word, not the amount of words. Unlike a plain alternation the longest 
+     * word always wins (ie. [new,new york] matches all of "new york").
+     * 
+     * When folding case the words are case folded before building the trie (so case variants share branches) and the 
+     * trie is matched case insensitively. Otherwise the trie is matched case sensitively - also in expressions that are
+     * not.
+     * 
+     * Word lists should be added before the function is used - expressions already compiled are not changed.
+     */
+    public static class Dictionary implements ExpressionFunction {
+        
+        private final ConcurrentMap<String,List<String>> lists = new ConcurrentHashMap<String, List<String>>();
+        private final ConcurrentMap<String,String> patterns = new ConcurrentHashMap<String, String>();
+        private final boolean foldCase;
+
+        public Dictionary() {
+            this(false);
+        }
+
+        public Dictionary(boolean foldCase) {
+            this.foldCase = foldCase;
+        }
+        
+        /**
+         * Add (or replace) word list
+         * @param list
+         * @param words
+         * @return 
+         */
+        public Dictionary add(String list, Collection<String> words) {
+            lists.put(list, new ArrayList<String>(words));
+            patterns.remove(list);
+            return this;
+        }
+        
+        public Dictionary add(String list, String ... words) {
+            return add(list, Arrays.asList(words));
+        }
+
+        public String execute(String[] args) {
+            if (args.length != 1)
+                throw new ExpressionException("Dictionary function requires 1 argument");
+            String list = args[0].trim();
+            String out = patterns.get(list);
+            if (out == null) {
+                List<String> words = lists.get(list);
+                if (words == null) {
+                    throw new ExpressionException(String.format("Missing word list: %s", list));
+                }
+                out = trie(words);
+                patterns.put(list, out);
+            }
+            return out;
+        }
+        
+        private String trie(List<String> words) {
+            Node root = new Node();
+            for(String word:words) {
+                Node node = root;
+                for(int i = 0; i < word.length(); ) {
+                    int cp = word.codePointAt(i);
+                    i += Character.charCount(cp);
+                    if (foldCase) {
+                        cp = Character.toLowerCase(Character.toUpperCase(cp));
+                    }
+                    Node child = node.children.get(cp);
+                    if (child == null) {
+                        child = new Node();
+                        node.children.put(cp, child);
+                    }
+                    node = child;
+                }
+                if (node != root) {
+                    node.word = true;
+                }
+            }
+            
+            StringBuilder sb = new StringBuilder();
+            //Expressions are matched case insensitively - so the trie has to turn that off when not folding case
+            sb.append(foldCase ? "(?iu:" : "(?-i:");
+            if (root.children.isEmpty()) {
+                //Empty list matches nothing
+                sb.append("(?!)");
+            } else {
+                appendAlternatives(root, sb);
+            }
+            sb.append(")");
+            return sb.toString();
+        }
+        
+        /**
+         * Append the part of the trie below node - grouped if needed
+         */
+        private static void append(Node node, StringBuilder sb) {
+            if (node.children.isEmpty()) {
+                return;
+            }
+            boolean leaves = true;
+            for(Node child:node.children.values()) {
+                if (!child.children.isEmpty()) {
+                    leaves = false;
+                }
+            }
+            //A single char or class does not need a group - even when optional
+            boolean group = alternatives(node) > 1 || (node.word && !leaves);
+            if (group) {
+                sb.append("(?:");
+            }
+            appendAlternatives(node, sb);
+            if (group) {
+                sb.append(")");
+            }
+            if (node.word) {
+                sb.append("?");
+            }
+        }
+        
+        /**
+         * Amount of alternatives below node - words ending right after node are merged into one class
+         */
+        private static int alternatives(Node node) {
+            int out = 0;
+            boolean leaves = false;
+            for(Node child:node.children.values()) {
+                if (child.children.isEmpty()) {
+                    leaves = true;
+                } else {
+                    out++;
+                }
+            }
+            return leaves ? out + 1 : out;
+        }
+        
+        private static void appendAlternatives(Node node, StringBuilder sb) {
+            boolean first = true;
+            List<Integer> leaves = new ArrayList<Integer>();
+            for(Entry<Integer,Node> entry:node.children.entrySet()) {
+                Node child = entry.getValue();
+                if (child.children.isEmpty()) {
+                    leaves.add(entry.getKey());
+                    continue;
+                }
+                if (!first) {
+                    sb.append("|");
+                }
+                first = false;
+                escape(entry.getKey(), sb);
+                append(child, sb);
+            }
+            if (leaves.isEmpty()) {
+                return;
+            }
+            if (!first) {
+                sb.append("|");
+            }
+            if (leaves.size() == 1) {
+                escape(leaves.get(0), sb);
+                return;
+            }
+            sb.append("[");
+            for(int cp:leaves) {
+                escape(cp, sb);
+            }
+            sb.append("]");
+        }
+        
+        private static void escape(int cp, StringBuilder sb) {
+            if (cp < 128 && Character.isLetterOrDigit(cp)) {
+                sb.append((char) cp);
+            } else if (cp < 128 && cp > 32) {
+                sb.append('\\').append((char) cp);
+            } else if (cp > 160 && Character.isLetterOrDigit(cp)) {
+                sb.appendCodePoint(cp);
+            } else {
+                sb.append(String.format("\\x{%x}", cp));
+            }
+        }
+        
+        private static final class Node {
+            private final Map<Integer,Node> children = new TreeMap<Integer, Node>();
+            private boolean word = false;
+        }
+    }
 }
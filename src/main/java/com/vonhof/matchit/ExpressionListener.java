@@ -0,0 +1,28 @@
+package com.vonhof.matchit;
+
+/**
+ * Receives events from the expressions and matchers of a context - see ExpressionContext.addListener. 
+ * 
+ * Listeners are called synchronously from the compiling or matching thread - so they must be fast and thread safe. 
+ * See ExpressionMetrics for a listener that collects counters and latency histograms per expression.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public interface ExpressionListener {
+    
+    /**
+     * Called when an expression has been compiled
+     * @param expression
+     * @param nanos Time spent compiling (expanding and compiling the pattern)
+     * @param patternLength Length of the expanded pattern
+     */
+    public void compiled(Expression expression, long nanos, int patternLength);
+    
+    /**
+     * Called after each search of an ExpressionMatcher (find, find(offset) and lookingAt)
+     * @param expression
+     * @param found Whether the search found a match
+     * @param nanos Time spent searching
+     */
+    public void searched(Expression expression, boolean found, long nanos);
+}
@@ -1,7 +1,5 @@
 package com.vonhof.matchit;
 
-import java.util.Set;
-
 /**
  *
  * @author Henrik Hofmeister <@vonhofdk>
@@ -9,11 +7,27 @@ import java.util.Set;
 public class ExpressionMatch extends SimpleMatch {
 
     protected final Expression expression;
-    protected String[] groupNames;
-    protected String[] subExpressionIds;
+    
+    /**
+     * The expanded expression that was matched - sub matches are resolved from its references.
+     */
+    final Fragment fragment;
+    
+    /**
+     * Name tables of the expression - shared with the expression and all other matches.
+     */
+    protected final NameTable groupNames;
+    protected final NameTable subExpressionIds;
 
     protected ExpressionMatch(Expression expression) {
-        this.expression = expression;
+        this(expression.fragment);
+    }
+    
+    ExpressionMatch(Fragment fragment) {
+        this.fragment = fragment;
+        this.expression = fragment.expression;
+        this.groupNames = fragment.groupNameTable;
+        this.subExpressionIds = fragment.subExpressionTable;
     }
 
     public int start(String group) {
@@ -35,131 +49,137 @@ public class ExpressionMatch extends SimpleMatch {
     }
 
     /**
-     * Get a map of all group names and group indices - along with the value they represent.
+     * Get all groups (by index and name) along with the value they represent.
      *
      * @return
      */
-    public StringIntMap<String> groups() {
+    public MatchGroups groups() {
         return groups(0, groupCount());
     }
 
     /**
-     * Get a map of all group names and group indices - along with the value they represent - between start and limit
+     * Get all groups (by index and name) along with the value they represent - between start and limit. Groups are 
+     * indexed from start.
      *
      * @param start
      * @param limit
      * @return
      */
-    public StringIntMap<String> groups(int start, int limit) {
-        StringIntMap<String> out = new StringIntMap<String>();
-
+    public MatchGroups groups(int start, int limit) {
+        String[] values = new String[limit - start];
         for (int i = start; i < limit; i++) {
-            String key = groupName(i);
-            if (key != null) {
-                out.put(key, group(i));
-            }
-            out.put(i - start, group(i));
+            values[i - start] = group(i);
         }
-
-
-
-        return out;
+        return new MatchGroups(groupNames, values, start);
     }
 
     public String subExpressionId(int i) {
-        return subExpressionIds[i];
+        return subExpressionIds.name(i);
     }
 
+    /**
+     * Get the sub expression ids by group index. The returned array is a copy.
+     * @return 
+     */
     public String[] subExpressionIds() {
-        return subExpressionIds;
+        return subExpressionIds.toArray();
     }
 
     public int subExpressionCount() {
-        return arrayCount(subExpressionIds);
+        return subExpressionIds.count();
     }
 
     public int subExpressionIndex(String group) {
-        return arrayLookup(group, subExpressionIds);
+        return subExpressionIds.indexOf(group);
     }
 
     public int groupIndex(String group) {
-        return arrayLookup(group, groupNames);
+        return groupNames.indexOf(group);
     }
 
     public String groupName(int i) {
-        return groupNames[i];
+        return groupNames.name(i);
     }
 
     public int namedGroupCount() {
-        return arrayCount(groupNames);
-    }
-
-    private int arrayCount(String[] array) {
-        int out = 0;
-        for (int i = 0; i < array.length; i++) {
-            if (array[i] != null) {
-                out++;
-            }
-
-        }
-        return out;
-    }
-
-    private int arrayLookup(String key, String[] array) {
-        int first = -1;
-        for (int i = 0; i < array.length; i++) {
-            if (array[i] != null
-                    && array[i].equals(key)) {
-                if (first == -1) {
-                    first = 1;
-                }
-                if (array[i] == null) {
-                    continue;
-                }
-                return i;
-            }
-
-        }
-        return first;
+        return groupNames.count();
     }
 
+    /**
+     * Get the match of the sub expression with id - or null if it did not match anything. Groups are numbered and 
+     * named as in the sub expression.
+     * 
+     * The sub match is a view of this match (no groups are copied) - so it changes with this match. Use 
+     * toMatchResult to keep it after the matcher has moved on.
+     * @param expressionId
+     * @return 
+     */
     public ExpressionMatch subMatch(String expressionId) {
         int offset = subExpressionIndex(expressionId);
         //If not found of group where its located is empty - return null
-        if (offset < 0 || group(offset) == null) {
+        if (offset < 0 || start(offset) < 0) {
             return null;
         }
 
-        Set<Expression> expressions = expression.subExpressions.get(expressionId);
-
-        //Find the sub expression that did match something (they are placed in a (<expr1>|<expr2>) )
-        Expression subExpression = null;
-
-        if (expressions.size() > 1) {
-            offset++;
-            for (Expression expr : expressions) {
-                if (group(offset) != null) {
-                    subExpression = expr;
-                    break;
-                }
-                offset += expr.groupCount;
-            }
-        } else {
-            subExpression = expressions.iterator().next();
+        Fragment.Reference reference = fragment.references.get(expressionId);
+        if (reference.definitions.length == 1) {
+            return view(reference.definitions[0], offset);
         }
-        //If no match was found - return null
-        if (subExpression == null) {
-            return null;
+        
+        //Find the sub expression that did match something (they are placed in a (<expr1>|<expr2>) ). The group of a 
+        //definition does not include prefixes factored out of it - so the match itself is read from the wrapping group
+        for (int i = 0; i < reference.definitions.length; i++) {
+            int group = offset + reference.definitionGroups[i];
+            if (start(group) >= 0) {
+                return view(reference.definitions[i], group, offset);
+            }
         }
+        return null;
+    }
+    
+    /**
+     * Get a view of the groups from offset and fragment.groupCount forward as a match for the fragment
+     * @param fragment
+     * @param offset
+     * @return 
+     */
+    ExpressionMatch view(Fragment fragment, int offset) {
+        return view(fragment, offset, offset);
+    }
+    
+    /**
+     * Get a view of the groups from offset and fragment.groupCount forward as a match for the fragment - reading the 
+     * entire match (group 0) from group zero
+     * @param fragment
+     * @param offset
+     * @param zero
+     * @return 
+     */
+    ExpressionMatch view(Fragment fragment, int offset, int zero) {
+        return new View(fragment, this, offset, zero);
+    }
+    
+    /**
+     * Get a copy of this match that is unaffected by subsequent operations on this match (or its matcher).
+     * @return 
+     */
+    public ExpressionMatch toMatchResult() {
+        return copy(fragment, 0);
+    }
+    
+    /**
+     * Copy the groups from offset and fragment.groupCount forward into a new match for the fragment. 
+     * @param fragment
+     * @param offset
+     * @return 
+     */
+    ExpressionMatch copy(Fragment fragment, int offset) {
+        ExpressionMatch out = new ExpressionMatch(fragment);
 
-        ExpressionMatch out = new ExpressionMatch(subExpression);
-
-        //Copy the values from this match into the sub match
-        int size = subExpression.groupCount;
+        //Copy the values from this match into the new match
+        int size = fragment.groupCount;
         int limit = offset + size;
         out.groups = new String[size];
-        out.groupNames = new String[size];
-        out.subExpressionIds = new String[size];
         out.groupStart = new int[size];
         out.groupEnd = new int[size];
 
@@ -167,8 +187,6 @@ public class ExpressionMatch extends SimpleMatch {
             out.groups[i - offset] = group(i);
             out.groupStart[i - offset] = start(i);
             out.groupEnd[i - offset] = end(i);
-            out.groupNames[i - offset] = groupName(i);
-            out.subExpressionIds[i - offset] = subExpression.groupSubExpression.get(i - offset);
         }
 
         return out;
@@ -177,4 +195,66 @@ public class ExpressionMatch extends SimpleMatch {
     public Expression expression() {
         return expression;
     }
+    
+    /**
+     * Groups of a parent match from an offset - see subMatch. Views of views read directly from the parent.
+     */
+    private static final class View extends ExpressionMatch {
+        private final ExpressionMatch parent;
+        private final int offset;
+        
+        /**
+         * The group of the parent holding group 0
+         */
+        private final int zero;
+
+        View(Fragment fragment, ExpressionMatch parent, int offset, int zero) {
+            super(fragment);
+            this.parent = parent;
+            this.offset = offset;
+            this.zero = zero;
+        }
+
+        @Override
+        ExpressionMatch view(Fragment fragment, int offset, int zero) {
+            return new View(fragment, parent, index(offset), index(zero));
+        }
+        
+        /**
+         * The group of the parent holding group
+         */
+        private int index(int group) {
+            return group == 0 ? zero : offset + group;
+        }
+        
+        private int check(int group) {
+            if (group < 0 || group >= fragment.groupCount) {
+                throw new IndexOutOfBoundsException(String.format("No group %d", group));
+            }
+            return index(group);
+        }
+
+        @Override
+        public int start(int group) {
+            return parent.start(check(group));
+        }
+
+        @Override
+        public int end(int group) {
+            return parent.end(check(group));
+        }
+
+        @Override
+        public String group(int group) {
+            if (group < 0 || group >= fragment.groupCount) {
+                return null;
+            }
+            return parent.group(index(group));
+        }
+
+        @Override
+        public int groupCount() {
+            return fragment.groupCount;
+        }
+    }
 }
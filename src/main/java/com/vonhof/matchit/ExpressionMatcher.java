@@ -1,56 +1,161 @@
 package com.vonhof.matchit;
 
-import java.util.regex.Matcher;
-
 /**
- *
+ * Matches an expression against a piece of text - see Expression.matcher.
+ * 
+ * By default every find copies all groups of the match into the matcher. When using lazy groups (see useLazyGroups)
+ * the matcher instead reads the offsets directly from the underlying engine matcher and only creates the group 
+ * strings when asked for them - making the cost of a match independent of the amount of groups in the expression.
+ * 
  * @author Henrik Hofmeister <@vonhofdk>
  */
 public final class ExpressionMatcher extends ExpressionMatch {
-    private final Matcher m;
+    private final EngineMatcher m;
+    private boolean lazy = false;
+    
+    /**
+     * Listener(s) of the context - null unless instrumented
+     */
+    private final ExpressionListener listener;
+
+    /**
+     * The budgeted text being matched - null unless using a budget
+     */
+    private final BudgetedText budget;
 
-    protected ExpressionMatcher(Matcher matcher, Expression baseExpression) {
+    protected ExpressionMatcher(EngineMatcher matcher, Expression baseExpression) {
+        this(matcher, baseExpression, null);
+    }
+    
+    ExpressionMatcher(EngineMatcher matcher, Expression baseExpression, BudgetedText budget) {
         super(baseExpression);
         this.m = matcher;
+        this.listener = baseExpression.ctxt.listener();
+        this.budget = budget;
+    }
+
+    /**
+     * Toggle lazy groups. When lazy the matcher does not copy anything on find - groups are read from the 
+     * underlying matcher when requested. Takes effect from the next find.
+     * @param lazy
+     * @return 
+     */
+    public ExpressionMatcher useLazyGroups(boolean lazy) {
+        this.lazy = lazy;
+        return this;
+    }
+    
+    /**
+     * Whether or not this matcher uses lazy groups. 
+     * @return 
+     */
+    public boolean hasLazyGroups() {
+        return lazy;
+    }
+
+    /**
+     * Reset matcher with new text - so the same matcher can be used for many texts.
+     * @param text
+     * @return 
+     */
+    public ExpressionMatcher reset(CharSequence text) {
+        if (budget != null) {
+            budget.reset(text);
+            m.reset(budget);
+        } else {
+            m.reset(text);
+        }
+        groups = null;
+        groupStart = null;
+        groupEnd = null;
+        return this;
     }
 
     public boolean find() {
-        if (m.find()) {
-            readMatch(m, expression, expression.groupCount);
-            return true;
+        long start = startSearch();
+        return found(m.find(), start);
+    }
+    
+    /**
+     * Start a search - returns the start time if instrumented
+     */
+    private long startSearch() {
+        if (budget != null) {
+            budget.start();
         }
-        return false;
+        return listener != null ? System.nanoTime() : 0;
+    }
+    
+    private boolean found(boolean found, long start) {
+        if (found) {
+            readMatch(m, expression.groupCount);
+        }
+        if (listener != null) {
+            listener.searched(expression, found, System.nanoTime() - start);
+        }
+        return found;
     }
 
-    protected void readMatch(Matcher m, Expression expr, int limit) {
+    protected void readMatch(EngineMatcher m, int limit) {
+        if (lazy) {
+            groups = null;
+            groupStart = null;
+            groupEnd = null;
+            return;
+        }
         int size = limit;
         groups = new String[size];
-        groupNames = new String[size];
-        subExpressionIds = new String[size];
         groupStart = new int[size];
         groupEnd = new int[size];
         for (int i = 0; i < limit; i++) {
             groups[i] = m.group(i);
             groupStart[i] = m.start(i);
             groupEnd[i] = m.end(i);
-            groupNames[i] = expr.groupNames.get(i);
-            subExpressionIds[i] = expr.groupSubExpression.get(i);
         }
     }
 
     public boolean find(int offset) {
-        if (m.find(offset)) {
-            readMatch(m, expression, expression.groupCount);
-            return true;
-        }
-        return false;
+        long start = startSearch();
+        return found(m.find(offset), start);
     }
 
     public boolean lookingAt() {
-        if (m.lookingAt()) {
-            readMatch(m, expression, expression.groupCount);
-            return true;
-        } 
-        return false;
+        long start = startSearch();
+        return found(m.lookingAt(), start);
+    }
+
+    @Override
+    public int start(int group) {
+        if (groupStart == null) {
+            return m.start(group);
+        }
+        return super.start(group);
+    }
+
+    @Override
+    public int end(int group) {
+        if (groupEnd == null) {
+            return m.end(group);
+        }
+        return super.end(group);
+    }
+
+    @Override
+    public String group(int group) {
+        if (groups == null) {
+            if (group < 0 || group >= expression.groupCount) {
+                return null;
+            }
+            return m.group(group);
+        }
+        return super.group(group);
+    }
+
+    @Override
+    public int groupCount() {
+        if (groups == null) {
+            return expression.groupCount;
+        }
+        return super.groupCount();
     }
 }
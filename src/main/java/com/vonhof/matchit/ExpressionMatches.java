@@ -0,0 +1,225 @@
+package com.vonhof.matchit;
+
+import java.util.Arrays;
+
+/**
+ * All matches of an expression in a text - stored as columns of group offsets. See Expression.findAll
+ *
+ * Only the start and end offsets of each group are stored (in one int array per group) - group strings are created
+ * when asked for. Use a cursor to iterate the matches without creating an object per match:
+ *
+ * ExpressionMatches matches = expr.findAll(text);
+ * ExpressionMatches.Cursor cursor = matches.cursor();
+ * while (cursor.next()) {
+ *     int start = cursor.start("NUM");
+ * }
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public final class ExpressionMatches {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Expression expression;
+    private final CharSequence text;
+    private final int groupCount;
+
+    /**
+     * Start and end offsets by group and match index
+     */
+    private int[][] starts;
+    private int[][] ends;
+    private int size = 0;
+
+    ExpressionMatches(Expression expression, CharSequence text) {
+        this.expression = expression;
+        this.text = text;
+        this.groupCount = expression.groupCount;
+        this.starts = new int[groupCount][INITIAL_CAPACITY];
+        this.ends = new int[groupCount][INITIAL_CAPACITY];
+    }
+
+    /**
+     * Add the current match of the matcher
+     */
+    void add(ExpressionMatch match) {
+        if (size == starts[0].length) {
+            int capacity = size * 2;
+            for(int group = 0; group < groupCount; group++) {
+                starts[group] = Arrays.copyOf(starts[group], capacity);
+                ends[group] = Arrays.copyOf(ends[group], capacity);
+            }
+        }
+        for(int group = 0; group < groupCount; group++) {
+            starts[group][size] = match.start(group);
+            ends[group][size] = match.end(group);
+        }
+        size++;
+    }
+
+    /**
+     * Amount of matches
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Amount of groups in each match (including group 0 - the entire match)
+     * @return
+     */
+    public int groupCount() {
+        return groupCount;
+    }
+
+    public Expression expression() {
+        return expression;
+    }
+
+    public CharSequence text() {
+        return text;
+    }
+
+    /**
+     * Start of group in match - or -1 if the group did not match anything.
+     * @param match
+     * @param group
+     * @return
+     */
+    public int start(int match, int group) {
+        checkIndex(match);
+        return starts[group][match];
+    }
+
+    /**
+     * End of group in match - or -1 if the group did not match anything.
+     * @param match
+     * @param group
+     * @return
+     */
+    public int end(int match, int group) {
+        checkIndex(match);
+        return ends[group][match];
+    }
+
+    /**
+     * Text of group in match - or null if the group did not match anything.
+     * @param match
+     * @param group
+     * @return
+     */
+    public String group(int match, int group) {
+        int start = start(match, group);
+        if (start < 0) {
+            return null;
+        }
+        return text.subSequence(start, ends[group][match]).toString();
+    }
+
+    /**
+     * Copy of the start offsets of group in all matches
+     * @param group
+     * @return
+     */
+    public int[] starts(int group) {
+        return Arrays.copyOf(starts[group], size);
+    }
+
+    /**
+     * Copy of the end offsets of group in all matches
+     * @param group
+     * @return
+     */
+    public int[] ends(int group) {
+        return Arrays.copyOf(ends[group], size);
+    }
+
+    /**
+     * Get the index of the named group - or -1 if not found
+     * @param name
+     * @return
+     */
+    public int groupIndex(String name) {
+        return expression.groupNameTable.indexOf(name);
+    }
+
+    /**
+     * Create a new cursor positioned before the first match
+     * @return
+     */
+    public Cursor cursor() {
+        return new Cursor(expression);
+    }
+
+    private void checkIndex(int match) {
+        if (match < 0 || match >= size) {
+            throw new IndexOutOfBoundsException(String.format("Match %d of %d", match, size));
+        }
+    }
+
+    /**
+     * A movable view of a single match in the batch - all the usual match methods (named groups, sub matches etc.)
+     * read from the current match.
+     */
+    public final class Cursor extends ExpressionMatch {
+        private int index = -1;
+
+        private Cursor(Expression expression) {
+            super(expression);
+        }
+
+        /**
+         * Move to the next match
+         * @return false if there are no more matches
+         */
+        public boolean next() {
+            if (index + 1 >= size) {
+                index = size;
+                return false;
+            }
+            index++;
+            return true;
+        }
+
+        /**
+         * Move to match
+         * @param match
+         */
+        public void moveTo(int match) {
+            checkIndex(match);
+            index = match;
+        }
+
+        /**
+         * Index of the current match
+         * @return
+         */
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public int start(int group) {
+            return ExpressionMatches.this.start(index, group);
+        }
+
+        @Override
+        public int end(int group) {
+            return ExpressionMatches.this.end(index, group);
+        }
+
+        @Override
+        public String group(int group) {
+            if (group < 0 || group >= groupCount) {
+                return null;
+            }
+            return ExpressionMatches.this.group(index, group);
+        }
+
+        @Override
+        public int groupCount() {
+            return groupCount;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.vonhof.matchit;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Listener that collects metrics per expression name - search counts, hits, misses, latency (total and histogram), 
+ * compile time and pattern length. 
+ * 
+ * Expressions are named by the naming function given - by default an expression is named by its text, so metrics of 
+ * expressions compiled from the same text are collected together. Expressions named null are not measured. Only the 
+ * names are kept - not the expressions (or their contexts).
+ * 
+ * Metrics are kept until removed - so the amount of names should be bounded. When expressions come and go (ie. per 
+ * tenant) name them by something bounded, use a metrics instance per context and remove the metrics of expressions 
+ * no longer in use. 
+ * 
+ * Usage:
+ * 
+ * ExpressionMetrics metrics = new ExpressionMetrics();
+ * ctxt.addListener(metrics);
+ * ...
+ * for(Entry<String,ExpressionMetrics.Stats> entry:metrics.stats().entrySet()) {
+ *     export(entry.getKey(), entry.getValue().searchCount(), entry.getValue().totalNanos());
+ * }
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionMetrics implements ExpressionListener {
+    
+    /**
+     * Names expressions by their text
+     */
+    public static final Function<Expression,String> TEXT = new Function<Expression, String>() {
+        public String apply(Expression expression) {
+            return expression.expression();
+        }
+    };
+    
+    private final ConcurrentMap<String,Stats> stats = new ConcurrentHashMap<String, Stats>();
+    private final Function<Expression,String> naming;
+
+    public ExpressionMetrics() {
+        this(TEXT);
+    }
+
+    /**
+     * Collect metrics per name of expressions - see class description.
+     * @param naming 
+     */
+    public ExpressionMetrics(Function<Expression,String> naming) {
+        this.naming = naming;
+    }
+
+    public void compiled(Expression expression, long nanos, int patternLength) {
+        Stats out = get(expression);
+        if (out == null) {
+            return;
+        }
+        out.compileCount.incrementAndGet();
+        out.compileNanos.addAndGet(nanos);
+        out.patternLength = patternLength;
+    }
+
+    public void searched(Expression expression, boolean found, long nanos) {
+        Stats out = get(expression);
+        if (out == null) {
+            return;
+        }
+        if (found) {
+            out.hits.incrementAndGet();
+        } else {
+            out.misses.incrementAndGet();
+        }
+        out.totalNanos.addAndGet(nanos);
+        out.histogram.incrementAndGet(Stats.bucket(nanos));
+    }
+    
+    private Stats get(Expression expression) {
+        String name = naming.apply(expression);
+        if (name == null) {
+            return null;
+        }
+        Stats out = stats.get(name);
+        if (out == null) {
+            Stats created = new Stats();
+            out = stats.putIfAbsent(name, created);
+            if (out == null) {
+                out = created;
+            }
+        }
+        return out;
+    }
+    
+    /**
+     * Get the metrics of expression - or null if nothing has been recorded for it.
+     * @param expression
+     * @return 
+     */
+    public Stats stats(Expression expression) {
+        String name = naming.apply(expression);
+        return name != null ? stats.get(name) : null;
+    }
+    
+    /**
+     * Get the metrics of expressions named name - or null if nothing has been recorded for it.
+     * @param name
+     * @return 
+     */
+    public Stats stats(String name) {
+        return stats.get(name);
+    }
+    
+    /**
+     * Get the metrics of all expressions by name. The returned map is read-only and updated live.
+     * @return 
+     */
+    public Map<String,Stats> stats() {
+        return Collections.unmodifiableMap(stats);
+    }
+    
+    /**
+     * Forget the metrics of expressions named name
+     * @param name
+     * @return The metrics removed - or null if there were none
+     */
+    public Stats remove(String name) {
+        return stats.remove(name);
+    }
+    
+    /**
+     * Forget all collected metrics
+     */
+    public void clear() {
+        stats.clear();
+    }
+    
+    /**
+     * Metrics of a single expression. Counters are updated live - so values read one after the other might not be 
+     * consistent with each other.
+     */
+    public static final class Stats {
+        
+        /**
+         * Amount of latency histogram buckets - bucket i counts searches taking less than 2^i nanoseconds (and atleast 
+         * 2^(i-1)). The last bucket counts everything slower.
+         */
+        public static final int BUCKETS = 40;
+        
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        private final AtomicLong compileCount = new AtomicLong();
+        private final AtomicLong compileNanos = new AtomicLong();
+        private volatile int patternLength = -1;
+        
+        private Stats() {
+            
+        }
+        
+        private static int bucket(long nanos) {
+            int bucket = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+            return Math.min(bucket, BUCKETS - 1);
+        }
+        
+        /**
+         * Amount of searches (find, find(offset) and lookingAt calls)
+         * @return 
+         */
+        public long searchCount() {
+            return hits.get() + misses.get();
+        }
+        
+        public long hitCount() {
+            return hits.get();
+        }
+        
+        public long missCount() {
+            return misses.get();
+        }
+        
+        /**
+         * Total time spent searching
+         * @return 
+         */
+        public long totalNanos() {
+            return totalNanos.get();
+        }
+        
+        /**
+         * Copy of the latency histogram - see BUCKETS
+         * @return 
+         */
+        public long[] histogram() {
+            long[] out = new long[BUCKETS];
+            for(int i = 0; i < BUCKETS; i++) {
+                out[i] = histogram.get(i);
+            }
+            return out;
+        }
+        
+        /**
+         * The upper bound (exclusive) of histogram bucket in nanoseconds - Long.MAX_VALUE for the last bucket.
+         * @param bucket
+         * @return 
+         */
+        public static long bucketLimit(int bucket) {
+            if (bucket >= BUCKETS - 1) {
+                return Long.MAX_VALUE;
+            }
+            return 1L << bucket;
+        }
+        
+        /**
+         * Amount of times the expression was compiled (expressions with the same name are counted together)
+         * @return 
+         */
+        public long compileCount() {
+            return compileCount.get();
+        }
+        
+        /**
+         * Total time spent compiling
+         * @return 
+         */
+        public long compileNanos() {
+            return compileNanos.get();
+        }
+        
+        /**
+         * Length of the expanded pattern - or -1 if the compilation was not seen.
+         * @return 
+         */
+        public int patternLength() {
+            return patternLength;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single pass parser for the expression syntax. Produces a tree of nodes - plain regular expression text, groups,
+ * sub expression references (${id}) and function calls (${function(args...)}).
+ *
+ * Escapes (including \Q...\E quotes) and character classes are understood - so escaped parentheses and parentheses
+ * within character classes are not mistaken for groups. Sub expressions and functions are recognized everywhere
+ * except within escapes and quotes.
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class ExpressionParser {
+
+    static abstract class Node {
+
+    }
+
+    /**
+     * Plain regular expression text - contains no groups
+     */
+    static final class Text extends Node {
+        final String text;
+
+        private Text(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * Any parenthesized construct - capturing or not.
+     */
+    static final class Group extends Node {
+        /**
+         * The text opening the group - "(" for capturing groups (named or not) and "(?:", "(?=", "(?i:" etc. otherwise.
+         * Groups are always closed by ")"
+         */
+        final String open;
+        final boolean capturing;
+
+        /**
+         * The name of a named group - or null
+         */
+        final String name;
+        final List<Node> children;
+
+        private Group(String open, boolean capturing, String name, List<Node> children) {
+            this.open = open;
+            this.capturing = capturing;
+            this.name = name;
+            this.children = Collections.unmodifiableList(children);
+        }
+    }
+
+    /**
+     * Reference to sub expression - ${id}
+     */
+    static final class Reference extends Node {
+        final String id;
+
+        private Reference(String id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Function call - ${id(arg1,arg2...)}
+     */
+    static final class Function extends Node {
+        final String id;
+        final String[] args;
+
+        private Function(String id, String[] args) {
+            this.id = id;
+            this.args = args;
+        }
+    }
+
+    private final String text;
+
+    /**
+     * Whether to recognize sub expressions and functions - or only groups
+     */
+    private final boolean references;
+    private int pos = 0;
+
+    private ExpressionParser(String text, boolean references) {
+        this.text = text;
+        this.references = references;
+    }
+
+    /**
+     * Parse expression
+     * @param text
+     * @return
+     */
+    static List<Node> parse(String text) {
+        return new ExpressionParser(text, true).parse();
+    }
+
+    /**
+     * Parse plain regular expression text (like the output of functions) - only groups are recognized.
+     * @param text
+     * @return
+     */
+    static List<Node> parseGroups(String text) {
+        return new ExpressionParser(text, false).parse();
+    }
+
+    private List<Node> parse() {
+        List<Node> out = parseSequence(false);
+        if (pos < text.length()) {
+            throw error("Unbalanced parenthesis");
+        }
+        return out;
+    }
+
+    /**
+     * Parse until the end of the text - or the end of the current group if within one.
+     */
+    private List<Node> parseSequence(boolean inGroup) {
+        List<Node> nodes = new ArrayList<Node>();
+        StringBuilder sb = new StringBuilder();
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            switch (c) {
+                case '\\':
+                    parseEscape(sb);
+                    break;
+                case '[':
+                    parseClass(nodes, sb);
+                    break;
+                case '(':
+                    flush(nodes, sb);
+                    parseGroup(nodes);
+                    break;
+                case ')':
+                    //End of group - or unbalanced which parse() reports
+                    flush(nodes, sb);
+                    return nodes;
+                case '$':
+                    if (!parseReference(nodes, sb)) {
+                        sb.append(c);
+                        pos++;
+                    }
+                    break;
+                default:
+                    sb.append(c);
+                    pos++;
+            }
+        }
+        if (inGroup) {
+            throw error("Unclosed group");
+        }
+        flush(nodes, sb);
+        return nodes;
+    }
+
+    private void parseEscape(StringBuilder sb) {
+        if (text.startsWith("\\Q", pos)) {
+            int end = text.indexOf("\\E", pos + 2);
+            end = end < 0 ? text.length() : end + 2;
+            sb.append(text, pos, end);
+            pos = end;
+            return;
+        }
+        int end = Math.min(pos + 2, text.length());
+        sb.append(text, pos, end);
+        pos = end;
+    }
+
+    /**
+     * Parse character class - including nested classes. Parentheses are literals within classes.
+     */
+    private void parseClass(List<Node> nodes, StringBuilder sb) {
+        int depth = 0;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '\\') {
+                parseEscape(sb);
+            } else if (c == '[') {
+                depth++;
+                sb.append(c);
+                pos++;
+                //A ] right after [ or [^ is a literal
+                if (pos < text.length() && text.charAt(pos) == '^') {
+                    sb.append('^');
+                    pos++;
+                }
+                if (pos < text.length() && text.charAt(pos) == ']') {
+                    sb.append(']');
+                    pos++;
+                }
+            } else if (c == ']') {
+                depth--;
+                sb.append(c);
+                pos++;
+                if (depth == 0) {
+                    return;
+                }
+            } else if (c != '$' || !parseReference(nodes, sb)) {
+                sb.append(c);
+                pos++;
+            }
+        }
+        throw error("Unclosed character class");
+    }
+
+    private void parseGroup(List<Node> nodes) {
+        int start = pos;
+        pos++;
+        if (pos >= text.length() || text.charAt(pos) != '?') {
+            nodes.add(group("(", true, null));
+            return;
+        }
+        pos++;
+        char c = pos < text.length() ? text.charAt(pos) : 0;
+        if (c == '<') {
+            int nameStart = pos + 1;
+            int nameEnd = identifierEnd(nameStart);
+            if (nameEnd > nameStart && nameEnd < text.length() && text.charAt(nameEnd) == '>') {
+                String name = text.substring(nameStart, nameEnd);
+                pos = nameEnd + 1;
+                nodes.add(group("(", true, name));
+                return;
+            }
+            if (nameStart < text.length() && (text.charAt(nameStart) == '=' || text.charAt(nameStart) == '!')) {
+                pos = nameStart + 1;
+                nodes.add(group(text.substring(start, pos), false, null));
+                return;
+            }
+            throw error("Invalid group name");
+        }
+        if (c == ':' || c == '=' || c == '!' || c == '>') {
+            pos++;
+            nodes.add(group(text.substring(start, pos), false, null));
+            return;
+        }
+
+        //Flags - either (?flags) or (?flags:...)
+        while (pos < text.length() && (Character.isLetter(text.charAt(pos)) || text.charAt(pos) == '-')) {
+            pos++;
+        }
+        if (pos < text.length() && text.charAt(pos) == ')') {
+            pos++;
+            nodes.add(new Text(text.substring(start, pos)));
+            return;
+        }
+        if (pos < text.length() && text.charAt(pos) == ':') {
+            pos++;
+            nodes.add(group(text.substring(start, pos), false, null));
+            return;
+        }
+        throw error("Unknown group construct");
+    }
+
+    /**
+     * Parse the contents of a group after its opening text and consume the closing parenthesis
+     */
+    private Group group(String open, boolean capturing, String name) {
+        List<Node> children = parseSequence(true);
+        pos++;
+        return new Group(open, capturing, name, children);
+    }
+
+    /**
+     * Parse ${id} or ${function(args...)} at the current position - if there is one
+     * @return true if a sub expression or function was found
+     */
+    private boolean parseReference(List<Node> nodes, StringBuilder sb) {
+        if (!references || !text.startsWith("${", pos)) {
+            return false;
+        }
+        int idStart = pos + 2;
+        int idEnd = identifierEnd(idStart);
+        if (idEnd == idStart || idEnd >= text.length()) {
+            return false;
+        }
+        String id = text.substring(idStart, idEnd);
+        char c = text.charAt(idEnd);
+        if (c == '}') {
+            flush(nodes, sb);
+            nodes.add(new Reference(id));
+            pos = idEnd + 1;
+            return true;
+        }
+        if (c == '(') {
+            int argsEnd = text.indexOf(')', idEnd + 1);
+            if (argsEnd < 0 || argsEnd + 1 >= text.length() || text.charAt(argsEnd + 1) != '}') {
+                return false;
+            }
+            flush(nodes, sb);
+            nodes.add(new Function(id, text.substring(idEnd + 1, argsEnd).split(",")));
+            pos = argsEnd + 2;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Find the end of the identifier (letter followed by letters, digits and underscores) starting at start. Returns
+     * start if there is none.
+     */
+    private int identifierEnd(int start) {
+        int i = start;
+        if (i >= text.length() || !isLetter(text.charAt(i))) {
+            return start;
+        }
+        i++;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (!isLetter(c) && !(c >= '0' && c <= '9') && c != '_') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static void flush(List<Node> nodes, StringBuilder sb) {
+        if (sb.length() > 0) {
+            nodes.add(new Text(sb.toString()));
+            sb.setLength(0);
+        }
+    }
+
+    private ExpressionException error(String msg) {
+        return new ExpressionException(String.format("%s at index %d in expression: %s", msg, pos, text));
+    }
+}
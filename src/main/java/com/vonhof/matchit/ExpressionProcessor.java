@@ -0,0 +1,332 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Matches the records (ie. lines) of a publisher and publishes the matches in batches - see java.util.concurrent.Flow.
+ *
+ * Records are only requested from the publisher as the batches are requested by the subscriber - at most prefetch
+ * records are buffered. Each batch contains up to batch size matches (in the order they were found) - from as many
+ * records as are available when it is published, so a partial batch is published instead of waiting for more records.
+ *
+ * ExpressionProcessor processor = new ExpressionProcessor(expr).useBatchSize(100);
+ * lines.subscribe(processor);
+ * processor.subscribe(subscriber); //Receives List<ExpressionProcessor.Result>
+ *
+ * A processor can only be subscribed to one publisher - and by one subscriber. Matching is done on the thread
+ * delivering records or requests - whichever comes last.
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionProcessor implements Flow.Processor<CharSequence, List<ExpressionProcessor.Result>> {
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final int DEFAULT_PREFETCH = 16;
+
+    /**
+     * The expression being matched - null when matching rules
+     */
+    private final Expression expression;
+
+    /**
+     * The rules being matched - null when matching a single expression
+     */
+    private final ExpressionSet rules;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int prefetch = DEFAULT_PREFETCH;
+
+    private final Queue<CharSequence> records = new ConcurrentLinkedQueue<CharSequence>();
+
+    /**
+     * Matches not yet published - only used while draining
+     */
+    private final Queue<Result> pending = new ArrayDeque<Result>();
+
+    /**
+     * Amount of batches requested by the subscriber and not yet published
+     */
+    private final AtomicLong demand = new AtomicLong();
+
+    /**
+     * Amount of times drain was called while draining - only one thread drains at a time
+     */
+    private final AtomicInteger draining = new AtomicInteger();
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super List<Result>> downstream;
+    private volatile boolean done = false;
+    private volatile Throwable error;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Set when the subscriber breaks the rules - published instead of anything pending
+     */
+    private volatile Throwable failure;
+
+    /**
+     * Index of the next record and the records consumed since requesting more - only used while draining
+     */
+    private long record = 0;
+    private int consumed = 0;
+
+    public ExpressionProcessor(Expression expression) {
+        this.expression = expression.compile();
+        this.rules = null;
+    }
+
+    /**
+     * Match the rules of the set - each result has the id of the rule that matched
+     * @param rules
+     */
+    public ExpressionProcessor(ExpressionSet rules) {
+        this.expression = null;
+        this.rules = rules;
+    }
+
+    /**
+     * Set the maximum amount of matches in each batch. Must be set before subscribing.
+     * @param batchSize
+     * @return
+     */
+    public ExpressionProcessor useBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Set the maximum amount of records requested from the publisher ahead of matching them. Must be set before
+     * subscribing.
+     * @param prefetch
+     * @return
+     */
+    public ExpressionProcessor usePrefetch(int prefetch) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("Prefetch must be positive");
+        }
+        this.prefetch = prefetch;
+        return this;
+    }
+
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (subscription == null) {
+            throw new NullPointerException("Subscription can not be null");
+        }
+        if (upstream != null || cancelled) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        subscription.request(prefetch);
+    }
+
+    public void onNext(CharSequence item) {
+        //Null is the fault of the publisher - so it is thrown back to it (Reactive Streams rule 2.13)
+        if (item == null) {
+            throw new NullPointerException("Record can not be null");
+        }
+        records.offer(item);
+        drain();
+    }
+
+    public void onError(Throwable throwable) {
+        if (throwable == null) {
+            throw new NullPointerException("Error can not be null");
+        }
+        error = throwable;
+        done = true;
+        drain();
+    }
+
+    public void onComplete() {
+        done = true;
+        drain();
+    }
+
+    public synchronized void subscribe(Flow.Subscriber<? super List<Result>> subscriber) {
+        if (downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Processor can only have one subscriber"));
+            return;
+        }
+        downstream = subscriber;
+        subscriber.onSubscribe(new Subscription());
+        drain();
+    }
+
+    /**
+     * Publish as many batches as requested and available - on one thread at a time.
+     */
+    private void drain() {
+        if (draining.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super List<Result>> subscriber = downstream;
+            if (subscriber != null) {
+                drain(subscriber);
+            }
+            missed = draining.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drain(Flow.Subscriber<? super List<Result>> subscriber) {
+        if (failure != null && !cancelled) {
+            fail(subscriber, failure);
+            return;
+        }
+        while (!cancelled && demand.get() > 0) {
+            while (pending.size() < batchSize) {
+                CharSequence text = records.poll();
+                if (text == null) {
+                    break;
+                }
+                try {
+                    match(text);
+                } catch (RuntimeException ex) {
+                    fail(subscriber, ex);
+                    return;
+                }
+                if (++consumed >= prefetch - (prefetch >> 2)) {
+                    upstream.request(consumed);
+                    consumed = 0;
+                }
+            }
+            if (pending.isEmpty()) {
+                break;
+            }
+
+            List<Result> batch = new ArrayList<Result>(Math.min(batchSize, pending.size()));
+            while (batch.size() < batchSize && !pending.isEmpty()) {
+                batch.add(pending.poll());
+            }
+            if (demand.get() != Long.MAX_VALUE) {
+                demand.decrementAndGet();
+            }
+            subscriber.onNext(batch);
+        }
+
+        //Completion (and upstream errors) are published once everything before has been - regardless of demand
+        if (!cancelled && done && records.isEmpty() && pending.isEmpty()) {
+            cancelled = true;
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+
+    private void fail(Flow.Subscriber<? super List<Result>> subscriber, Throwable ex) {
+        cancelled = true;
+        Flow.Subscription subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        records.clear();
+        pending.clear();
+        subscriber.onError(ex);
+    }
+
+    /**
+     * Add the matches of the record to the pending matches
+     */
+    private void match(CharSequence text) {
+        long index = record++;
+        if (rules != null) {
+            ExpressionSetMatcher matcher = rules.matcher(text);
+            while (matcher.find()) {
+                pending.add(new Result(index, matcher.id(), matcher.match().toMatchResult()));
+            }
+        } else {
+            ExpressionMatcher matcher = expression.matcher(text).useLazyGroups(true);
+            while (matcher.find()) {
+                pending.add(new Result(index, null, matcher.toMatchResult()));
+            }
+        }
+    }
+
+    private final class Subscription implements Flow.Subscription {
+
+        public void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException(String.format("Requested %d batches", n));
+                drain();
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = demand.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!demand.compareAndSet(current, next));
+            drain();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            Flow.Subscription subscription = upstream;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            records.clear();
+        }
+    }
+
+    /**
+     * A match of a record
+     */
+    public static final class Result {
+        private final long record;
+        private final String id;
+        private final ExpressionMatch match;
+
+        Result(long record, String id, ExpressionMatch match) {
+            this.record = record;
+            this.id = id;
+            this.match = match;
+        }
+
+        /**
+         * The index of the record that was matched - from the first record published
+         * @return
+         */
+        public long record() {
+            return record;
+        }
+
+        /**
+         * The id of the rule that matched - or null when not matching rules
+         * @return
+         */
+        public String id() {
+            return id;
+        }
+
+        public ExpressionMatch match() {
+            return match;
+        }
+
+        @Override
+        public String toString() {
+            return record + (id != null ? ":" + id : "") + ":" + match.group();
+        }
+    }
+}
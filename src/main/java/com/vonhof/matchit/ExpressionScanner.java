@@ -0,0 +1,469 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Finds all matches of an expression in a (large) text in parallel - see Expression.scanner().
+ * 
+ * The text is split into segments which are scanned in a fork join pool. Each segment only reports matches that 
+ * start within it - and may look up to overlap characters past its end to complete them. When merging the segments 
+ * the matches are re-synchronized so the result is exactly what a sequential find() loop would have returned - as
+ * long as no match is longer than the overlap.
+ * 
+ * When using line boundaries segments end at new lines and no overlap is used - use this when matches never span 
+ * lines.
+ * 
+ * Matches (and the text between them) can also be streamed - see matches and split. The streams are lazy and 
+ * sequential, but split into parts of at least segment size when made parallel. Parts are only split at the start of
+ * a match that a sequential scan is known to find - whatever it matched in the overlap characters before the middle
+ * of the part - so parallel streams hold the same elements as sequential ones under the same assumption as above. 
+ * Parts where this can not be determined are not split. Parallel streams run in the common pool.
+ * 
+ * Scanners are not thread safe - but the same scanner can be used for any number of scans.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionScanner {
+    
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    
+    private final Expression expression;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private int overlap = ExpressionStreamMatcher.DEFAULT_MAX_MATCH_LENGTH;
+    private boolean lineBoundaries = false;
+
+    protected ExpressionScanner(Expression expression) {
+        this.expression = expression.compile();
+    }
+
+    /**
+     * Set the fork join pool to scan in. Defaults to the common pool.
+     * @param pool
+     * @return 
+     */
+    public ExpressionScanner usePool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Set the (minimum) size of each segment in characters.
+     * @param segmentSize
+     * @return 
+     */
+    public ExpressionScanner useSegmentSize(int segmentSize) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Set the amount of characters a segment may look past its end - ie. the maximum length of a match.
+     * @param overlap
+     * @return 
+     */
+    public ExpressionScanner useOverlap(int overlap) {
+        if (overlap < 0) {
+            throw new IllegalArgumentException("Overlap can not be negative");
+        }
+        this.overlap = overlap;
+        return this;
+    }
+
+    /**
+     * Toggle line boundaries. When enabled segments end at new lines and matches can not span segments.
+     * @param lineBoundaries
+     * @return 
+     */
+    public ExpressionScanner useLineBoundaries(boolean lineBoundaries) {
+        this.lineBoundaries = lineBoundaries;
+        return this;
+    }
+
+    /**
+     * Find all matches in text - in the order they appear.
+     * @param text
+     * @return 
+     */
+    public List<ExpressionMatch> scan(CharSequence text) {
+        List<Integer> boundaries = new ArrayList<Integer>();
+        int length = text.length();
+        int offset = 0;
+        boundaries.add(0);
+        while (offset < length) {
+            int next = (int) Math.min(length, (long) offset + segmentSize);
+            if (lineBoundaries) {
+                while (next < length && text.charAt(next - 1) != '\n') {
+                    next++;
+                }
+            }
+            boundaries.add(next);
+            offset = next;
+        }
+        
+        if (boundaries.size() <= 2) {
+            return new ScanTask(text, 0, length).compute().matches;
+        }
+        
+        int[] segments = new int[boundaries.size()];
+        for(int i = 0; i < segments.length; i++) {
+            segments[i] = boundaries.get(i);
+        }
+        return pool.invoke(new SplitTask(text, segments, 0, segments.length - 1)).matches;
+    }
+    
+    /**
+     * Stream all matches in text - in the order they appear. Each match is a copy (see 
+     * ExpressionMatch.toMatchResult).
+     * @param text
+     * @return 
+     */
+    public Stream<ExpressionMatch> matches(CharSequence text) {
+        return StreamSupport.stream(new MatchParts(text, 0, text.length(), true), false);
+    }
+    
+    /**
+     * Stream the text around all matches in text - like String.split(regex, -1) (so empty strings are included - 
+     * except before a zero width match at the start of the text).
+     * @param text
+     * @return 
+     */
+    public Stream<String> split(CharSequence text) {
+        return StreamSupport.stream(new TokenParts(text, 0, text.length(), true), false);
+    }
+
+    /**
+     * Get the region end used when finding matches starting before end
+     */
+    private int regionEnd(CharSequence text, int end) {
+        if (lineBoundaries) {
+            return end;
+        }
+        return (int) Math.min(text.length(), (long) end + overlap);
+    }
+    
+    /**
+     * Find matches starting from start and before end - as a sequential find loop would. At the end of the text 
+     * matches starting at end (ie. empty matches) are included as well.
+     */
+    private void find(CharSequence text, int start, int end, int maxMatches, Segment out) {
+        int limit = end == text.length() ? end + 1 : end;
+        if (start >= limit) {
+            return;
+        }
+        EngineMatcher m = expression.compiled.matcher(text);
+        m.region(start, regionEnd(text, end));
+        
+        ExpressionMatcher matcher = new ExpressionMatcher(m, expression).useLazyGroups(true);
+        int found = 0;
+        while (found < maxMatches && matcher.find() && matcher.start() < limit) {
+            out.matches.add(matcher.toMatchResult());
+            found++;
+        }
+    }
+    
+    /**
+     * Where a sequential find continues after the match
+     */
+    private static int next(ExpressionMatch match) {
+        return match.end() == match.start() ? match.end() + 1 : match.end();
+    }
+    
+    /**
+     * Merge right into left - making sure the matches are those a sequential scan would have found.
+     */
+    private Segment merge(CharSequence text, Segment left, Segment right) {
+        int i = 0;
+        if (!left.matches.isEmpty()) {
+            int next = next(left.matches.get(left.matches.size() - 1));
+            
+            //If the last match of left overlapped into right - find matches until we're back in sync with right
+            while (next > right.start) {
+                while (i < right.matches.size() && right.matches.get(i).start() < next) {
+                    i++;
+                }
+                Segment resync = new Segment(next, right.end);
+                find(text, next, right.end, 1, resync);
+                if (resync.matches.isEmpty()) {
+                    i = right.matches.size();
+                    break;
+                }
+                ExpressionMatch match = resync.matches.get(0);
+                while (i < right.matches.size() && right.matches.get(i).start() < match.start()) {
+                    i++;
+                }
+                if (i < right.matches.size() 
+                        && right.matches.get(i).start() == match.start()
+                        && right.matches.get(i).end() == match.end()) {
+                    break;
+                }
+                left.matches.add(match);
+                next = next(match);
+            }
+        }
+        
+        left.matches.addAll(right.matches.subList(i, right.matches.size()));
+        left.end = right.end;
+        return left;
+    }
+    
+    /**
+     * Get where to split the text between start and end (around middle) - the start of a match that a sequential find
+     * loop from start would have found. Returns -1 if there is none.
+     * 
+     * Without line boundaries a sequential scan arrives at middle either searching from it - or continuing after a
+     * match that started up to overlap characters before it. All of these scans are advanced together (merging those
+     * that find the same match) until they agree on a match at or after middle.
+     */
+    private int boundary(CharSequence text, int start, int middle, int end) {
+        EngineMatcher m = expression.compiled.matcher(text);
+        if (lineBoundaries) {
+            while (middle < end && text.charAt(middle - 1) != '\n') {
+                middle++;
+            }
+            m.region(middle, end);
+            if (m.find() && m.start(0) < end) {
+                return m.start(0);
+            }
+            return -1;
+        }
+        
+        int regionEnd = regionEnd(text, end);
+        TreeSet<Integer> cursors = new TreeSet<Integer>();
+        cursors.add(middle);
+        for(int i = Math.max(start, middle - overlap); i < middle; i++) {
+            m.region(i, regionEnd);
+            if (m.lookingAt()) {
+                cursors.add(next(m));
+            }
+        }
+        
+        while (true) {
+            int cursor = cursors.pollFirst();
+            if (cursor >= end) {
+                return -1;
+            }
+            m.region(cursor, regionEnd);
+            if (!m.find() || m.start(0) >= end) {
+                return -1;
+            }
+            int found = m.start(0);
+            
+            //Scans from any cursor up to the match find the same match - and continue the same way
+            cursors.headSet(found, true).clear();
+            if (cursors.isEmpty() && found >= middle) {
+                return found;
+            }
+            cursors.add(next(m));
+        }
+    }
+    
+    private static int next(EngineMatcher m) {
+        return m.end(0) == m.start(0) ? m.end(0) + 1 : m.end(0);
+    }
+    
+    /**
+     * Part of a text streamed by a spliterator - finds the matches starting from start and before end. Parts can only 
+     * be split before they are traversed.
+     */
+    private abstract class Part<T> implements Spliterator<T> {
+        protected final CharSequence text;
+        protected int start;
+        protected final int end;
+        
+        /**
+         * Whether the part starts at the start of the text (or was split off from the middle of it)
+         */
+        protected boolean first;
+        private ExpressionMatcher matcher;
+        private boolean done = false;
+
+        protected Part(CharSequence text, int start, int end, boolean first) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+        }
+        
+        /**
+         * Create the part from start to end - when splitting off the first part of this part
+         */
+        protected abstract Part<T> part(int start, int end, boolean first);
+        
+        /**
+         * Find the next match of this part - or null if there are no more
+         */
+        protected ExpressionMatcher find() {
+            if (done) {
+                return null;
+            }
+            if (matcher == null) {
+                EngineMatcher m = expression.compiled.matcher(text);
+                m.region(start, lineBoundaries ? end : text.length());
+                matcher = new ExpressionMatcher(m, expression).useLazyGroups(true);
+            }
+            int limit = end == text.length() ? end + 1 : end;
+            if (!matcher.find() || matcher.start() >= limit) {
+                done = true;
+                return null;
+            }
+            return matcher;
+        }
+
+        public Spliterator<T> trySplit() {
+            if (matcher != null || end - start < 2L * segmentSize) {
+                return null;
+            }
+            int boundary = boundary(text, start, start + (end - start) / 2, end);
+            if (boundary <= start) {
+                return null;
+            }
+            Part<T> out = part(start, boundary, first);
+            start = boundary;
+            first = false;
+            return out;
+        }
+
+        public long estimateSize() {
+            return end - start;
+        }
+
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+    
+    private final class MatchParts extends Part<ExpressionMatch> {
+        
+        private MatchParts(CharSequence text, int start, int end, boolean first) {
+            super(text, start, end, first);
+        }
+
+        @Override
+        protected Part<ExpressionMatch> part(int start, int end, boolean first) {
+            return new MatchParts(text, start, end, first);
+        }
+
+        public boolean tryAdvance(Consumer<? super ExpressionMatch> action) {
+            ExpressionMatcher match = find();
+            if (match == null) {
+                return false;
+            }
+            action.accept(match.toMatchResult());
+            return true;
+        }
+    }
+    
+    /**
+     * The text before each match of the part - and after the last one. Since parts are split at the start of a 
+     * match, the text before the first match of a part split off from the middle belongs to the previous part.
+     */
+    private final class TokenParts extends Part<String> {
+        private int last = -1;
+        private boolean skip;
+        private boolean done = false;
+        
+        private TokenParts(CharSequence text, int start, int end, boolean first) {
+            super(text, start, end, first);
+        }
+
+        @Override
+        protected Part<String> part(int start, int end, boolean first) {
+            return new TokenParts(text, start, end, first);
+        }
+
+        public boolean tryAdvance(Consumer<? super String> action) {
+            if (last < 0) {
+                last = start;
+                skip = !first;
+            }
+            while (!done) {
+                ExpressionMatcher match = find();
+                String token = null;
+                if (match == null) {
+                    done = true;
+                    token = text.subSequence(last, Math.max(last, end)).toString();
+                } else {
+                    //Like String.split a zero width match at the start of the text does not make a leading empty string
+                    if (!skip && match.end() > 0) {
+                        token = text.subSequence(last, match.start()).toString();
+                    }
+                    last = match.end();
+                }
+                skip = false;
+                if (token != null) {
+                    action.accept(token);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    private static final class Segment {
+        private final int start;
+        private int end;
+        private final List<ExpressionMatch> matches = new ArrayList<ExpressionMatch>();
+
+        private Segment(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+    
+    private final class ScanTask extends RecursiveTask<Segment> {
+        private final CharSequence text;
+        private final int start;
+        private final int end;
+
+        private ScanTask(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Segment compute() {
+            Segment out = new Segment(start, end);
+            find(text, start, end, Integer.MAX_VALUE, out);
+            return out;
+        }
+    }
+    
+    private final class SplitTask extends RecursiveTask<Segment> {
+        private final CharSequence text;
+        private final int[] boundaries;
+        private final int from;
+        private final int to;
+
+        private SplitTask(CharSequence text, int[] boundaries, int from, int to) {
+            this.text = text;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Segment compute() {
+            if (to - from == 1) {
+                return new ScanTask(text, boundaries[from], boundaries[to]).compute();
+            }
+            int middle = (from + to) >>> 1;
+            SplitTask right = new SplitTask(text, boundaries, middle, to);
+            right.fork();
+            Segment left = new SplitTask(text, boundaries, from, middle).compute();
+            return merge(text, left, right.join());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A set of expressions (rules) from an expression context that are matched against a text together.
+ * 
+ * The required literals of all rules (see LiteralFilter) are looked for in a single scan of the text - and only the 
+ * rules that may match are matched, each on its own. So every match of every rule is reported - also when it 
+ * overlaps the match of another rule - and the cost of a text depends on the rules that may match it rather than on 
+ * the amount of rules in the set. Matches are reported in the order they start - rules matching at the same position
+ * in the order they were added.
+ * 
+ * Usage:
+ * 
+ * ExpressionSet rules = ctxt.compileSet("error","warning","login");
+ * ExpressionSetMatcher matcher = rules.matcher(line);
+ * while(matcher.find()) {
+ *     String ruleId = matcher.id();
+ *     ExpressionMatch match = matcher.match(); //Groups as defined by the rule
+ * }
+ * 
+ * Expression sets are immutable and thread safe.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionSet {
+    
+    /**
+     * The ids of the rules in this set (in order)
+     */
+    private final String[] ids;
+    
+    /**
+     * The expression of each rule - ${id}
+     */
+    private final Expression[] rules;
+    
+    private final RuleFilter filter;
+    
+    protected ExpressionSet(ExpressionContext ctxt, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            throw new ExpressionException("Expression set requires atleast 1 expression");
+        }
+        this.ids = new LinkedHashSet<String>(ids).toArray(new String[0]);
+        this.rules = new Expression[this.ids.length];
+        
+        List<LiteralFilter> filters = new ArrayList<LiteralFilter>(rules.length);
+        for(int i = 0; i < rules.length; i++) {
+            rules[i] = ctxt.compile("${" + this.ids[i] + "}").compile();
+            filters.add(LiteralFilter.compile(rules[i].compiled.pattern()));
+        }
+        this.filter = new RuleFilter(filters);
+    }
+    
+    /**
+     * Get the ids of the expressions in this set - in the order they are tried.
+     * @return 
+     */
+    public List<String> ids() {
+        List<String> out = new ArrayList<String>(ids.length);
+        Collections.addAll(out, ids);
+        return out;
+    }
+    
+    /**
+     * Create a new matcher to look for all expressions in this set in the supplied text.
+     * @param text
+     * @return 
+     */
+    public ExpressionSetMatcher matcher(CharSequence text) {
+        boolean[] candidates = filter.candidates(text);
+        ExpressionMatcher[] matchers = new ExpressionMatcher[rules.length];
+        for(int i = 0; i < rules.length; i++) {
+            if (candidates[i]) {
+                matchers[i] = rules[i].matcher(text).useLazyGroups(true);
+            }
+        }
+        return new ExpressionSetMatcher(this, matchers);
+    }
+    
+    /**
+     * Get the ids of the expressions that matched anywhere in the text - in the order they were first found.
+     * @param text
+     * @return 
+     */
+    public Set<String> matchingIds(CharSequence text) {
+        Set<String> out = new LinkedHashSet<String>();
+        ExpressionSetMatcher matcher = matcher(text);
+        while (matcher.find()) {
+            out.add(matcher.id());
+            matcher.skipRule();
+        }
+        return out;
+    }
+    
+    String id(int ruleIndex) {
+        return ids[ruleIndex];
+    }
+}
@@ -0,0 +1,110 @@
+package com.vonhof.matchit;
+
+/**
+ * Matches all the expressions of an expression set against a piece of text - see ExpressionSet.matcher.
+ * 
+ * Each rule that may match has its own matcher - find returns the next match of any of them (the one starting first).
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public final class ExpressionSetMatcher {
+    private final ExpressionSet set;
+    
+    /**
+     * Matcher of each rule - null for rules that can not match the text
+     */
+    private final ExpressionMatcher[] matchers;
+    
+    /**
+     * Whether the matcher of each rule has a match not yet returned (or returned by the last find)
+     */
+    private final boolean[] found;
+    private boolean started = false;
+    private int rule = -1;
+
+    ExpressionSetMatcher(ExpressionSet set, ExpressionMatcher[] matchers) {
+        this.set = set;
+        this.matchers = matchers;
+        this.found = new boolean[matchers.length];
+    }
+
+    public boolean find() {
+        if (!started) {
+            started = true;
+            for(int i = 0; i < matchers.length; i++) {
+                found[i] = matchers[i] != null && matchers[i].find();
+            }
+        } else if (rule >= 0) {
+            found[rule] = matchers[rule].find();
+        }
+        return next();
+    }
+
+    public boolean find(int offset) {
+        started = true;
+        for(int i = 0; i < matchers.length; i++) {
+            found[i] = matchers[i] != null && matchers[i].find(offset);
+        }
+        return next();
+    }
+    
+    /**
+     * Stop matching the rule of the current match
+     */
+    void skipRule() {
+        if (rule >= 0) {
+            found[rule] = false;
+            rule = -1;
+        }
+    }
+
+    /**
+     * Pick the match starting first - or the first rule if several start at the same position
+     */
+    private boolean next() {
+        rule = -1;
+        for(int i = 0; i < matchers.length; i++) {
+            if (found[i] && (rule < 0 || matchers[i].start() < matchers[rule].start())) {
+                rule = i;
+            }
+        }
+        return rule >= 0;
+    }
+    
+    private ExpressionMatcher current() {
+        if (rule < 0) {
+            throw new IllegalStateException("No match available");
+        }
+        return matchers[rule];
+    }
+
+    /**
+     * The id of the expression that matched
+     * @return 
+     */
+    public String id() {
+        current();
+        return set.id(rule);
+    }
+
+    /**
+     * The match of the expression that matched - groups are numbered and named as in the matching expression. The 
+     * match is a view that changes with the next find - see ExpressionMatch.subMatch
+     * @return 
+     */
+    public ExpressionMatch match() {
+        return current().subMatch(id());
+    }
+
+    public int start() {
+        return current().start();
+    }
+
+    public int end() {
+        return current().end();
+    }
+
+    public String group() {
+        return current().group();
+    }
+}
@@ -0,0 +1,236 @@
+package com.vonhof.matchit;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Binary snapshot of the expanded expressions in a context - see ExpressionContext.save and ExpressionContext.load
+ *
+ * The snapshot contains every sub expression (in dependency order - so sub expressions are always read before the
+ * expressions using them) with the expanded pattern and group annotations of each of its definitions:
+ *
+ * int magic, int version, int count
+ * count x [string id, int definitions, definitions x fragment]
+ *
+ * fragment: string expression, string pattern, int groupCount,
+ *           int names x [int group, string name], int subGroups x [int group, string id],
+ *           int references x [string id], int expressionIds x [string id], int functionIds x [string id]
+ *
+ * Strings are written as the byte length followed by the UTF-8 bytes.
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class ExpressionSnapshot {
+
+    private static final int MAGIC = 0x4D415443; //MATC
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ExpressionSnapshot() {
+
+    }
+
+    /**
+     * Write all sub expressions of the context
+     * @param ctxt
+     * @param out
+     * @throws IOException
+     */
+    static void write(ExpressionContext ctxt, DataOutputStream out) throws IOException {
+        Map<String,Fragment.Reference> ordered = new LinkedHashMap<String, Fragment.Reference>();
+        for(String id:ctxt.ids()) {
+            order(ctxt.reference(id), ordered);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(ordered.size());
+        for(Fragment.Reference reference:ordered.values()) {
+            writeString(out, reference.id);
+            out.writeInt(reference.definitions.length);
+            for(Fragment definition:reference.definitions) {
+                writeFragment(out, definition);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Add references in dependency order - the references a fragment uses are added before the reference itself.
+     */
+    private static void order(Fragment.Reference reference, Map<String,Fragment.Reference> ordered) {
+        if (ordered.containsKey(reference.id)) {
+            return;
+        }
+        for(Fragment definition:reference.definitions) {
+            for(Fragment.Reference dependency:definition.references.values()) {
+                order(dependency, ordered);
+            }
+        }
+        ordered.put(reference.id, reference);
+    }
+
+    private static void writeFragment(DataOutputStream out, Fragment fragment) throws IOException {
+        writeString(out, fragment.expression.expression());
+        writeString(out, fragment.pattern);
+        out.writeInt(fragment.groupCount);
+
+        writeGroups(out, fragment.groupNames);
+        writeGroups(out, fragment.groupSubExpression);
+        writeStrings(out, fragment.references.keySet());
+        writeStrings(out, fragment.expressionIds);
+        writeStrings(out, fragment.functionIds);
+    }
+
+    private static void writeGroups(DataOutputStream out, Map<Integer,String> groups) throws IOException {
+        out.writeInt(groups.size());
+        for(Entry<Integer,String> entry:groups.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for(String string:strings) {
+            writeString(out, string);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read snapshot for the context. The context must not define any of the sub expressions in the snapshot. Nothing 
+     * is added to the context - the expressions of the references read are created by it, but must be added to it.
+     * @param ctxt
+     * @param in
+     * @return The references read - in the order they were read
+     * @throws IOException
+     */
+    static List<Fragment.Reference> read(ExpressionContext ctxt, ByteBuffer in) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not an expression snapshot");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported expression snapshot version: %d", version));
+            }
+
+            int count = readCount(in);
+            Map<String,Fragment.Reference> read = new LinkedHashMap<String, Fragment.Reference>();
+            for(int i = 0; i < count; i++) {
+                String id = readString(in);
+                if (ctxt.get(id) != null) {
+                    throw new ExpressionException(String.format("Expression already defined: %s", id));
+                }
+                if (read.containsKey(id)) {
+                    throw new IOException(String.format("Expression snapshot contains %s more than once", id));
+                }
+                int size = readCount(in);
+                if (size == 0) {
+                    throw new IOException(String.format("Expression snapshot has no definitions for %s", id));
+                }
+                List<Fragment> definitions = new ArrayList<Fragment>(size);
+                for(int d = 0; d < size; d++) {
+                    definitions.add(readFragment(ctxt, id, in, read));
+                }
+                read.put(id, new Fragment.Reference(id, definitions, ctxt.isFactoring()));
+            }
+            return new ArrayList<Fragment.Reference>(read.values());
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Expression snapshot is truncated", ex);
+        }
+    }
+
+    private static Fragment readFragment(ExpressionContext ctxt, String id, ByteBuffer in,
+                                         Map<String,Fragment.Reference> read) throws IOException {
+        Expression expression = ctxt.compile(readString(in));
+        String pattern = readString(in);
+        int groupCount = in.getInt();
+        if (groupCount < 0) {
+            throw new IOException(String.format("Expression snapshot has invalid group count for %s: %d", 
+                                                id, groupCount));
+        }
+
+        Map<Integer,String> groupNames = readGroups(in, id, groupCount);
+        Map<Integer,String> groupSubExpression = readGroups(in, id, groupCount);
+
+        Map<String,Fragment.Reference> references = new LinkedHashMap<String, Fragment.Reference>();
+        Map<String,Set<Expression>> subExpressions = new LinkedHashMap<String, Set<Expression>>();
+        for(String referenceId:readStrings(in)) {
+            Fragment.Reference reference = read.get(referenceId);
+            if (reference == null) {
+                throw new IOException(String.format("Expression snapshot is missing sub expression: %s", referenceId));
+            }
+            references.put(referenceId, reference);
+            subExpressions.put(referenceId, new LinkedHashSet<Expression>(reference.expressions));
+        }
+
+        Set<String> expressionIds = readStrings(in);
+        Set<String> functionIds = readStrings(in);
+
+        return new Fragment(expression, pattern, groupCount, groupNames, groupSubExpression, subExpressions,
+                            references, expressionIds, functionIds);
+    }
+
+    private static Map<Integer,String> readGroups(ByteBuffer in, String id, int groupCount) throws IOException {
+        int size = readCount(in);
+        Map<Integer,String> out = new LinkedHashMap<Integer, String>();
+        for(int i = 0; i < size; i++) {
+            int group = in.getInt();
+            if (group < 0 || group >= groupCount) {
+                throw new IOException(String.format("Expression snapshot has invalid group for %s: %d of %d", 
+                                                    id, group, groupCount));
+            }
+            out.put(group, readString(in));
+        }
+        return out;
+    }
+
+    private static Set<String> readStrings(ByteBuffer in) throws IOException {
+        int size = readCount(in);
+        Set<String> out = new LinkedHashSet<String>();
+        for(int i = 0; i < size; i++) {
+            out.add(readString(in));
+        }
+        return out;
+    }
+
+    /**
+     * Read the amount of entries that follow - each entry takes at least 4 bytes, so a count can never exceed what 
+     * is left of the snapshot
+     */
+    private static int readCount(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 4) {
+            throw new IOException(String.format("Expression snapshot has invalid count: %d", count));
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
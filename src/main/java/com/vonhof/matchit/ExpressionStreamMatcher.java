@@ -0,0 +1,206 @@
+package com.vonhof.matchit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Matches an expression against a stream of characters - see Expression.matcher(Reader).
+ * 
+ * The stream is read in chunks into a sliding window - so memory use is bounded by the chunk size and the maximum 
+ * match length no matter how large the input is. Matches are only guaranteed to be found (and to be complete) if 
+ * they are no longer than the maximum match length.
+ * 
+ * start/end offsets are relative to base() - use absoluteStart/absoluteEnd to get offsets (in characters) into the 
+ * entire stream.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public final class ExpressionStreamMatcher extends ExpressionMatch implements Closeable {
+    
+    public static final int DEFAULT_MAX_MATCH_LENGTH = 4096;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    
+    /**
+     * Characters kept in front of the search position when sliding the window - for look behinds and word 
+     * boundaries.
+     */
+    private static final int CONTEXT = 64;
+    
+    private final Reader reader;
+    private final int maxMatchLength;
+    private final char[] buffer;
+    private final EngineMatcher m;
+    
+    /**
+     * Amount of characters in the buffer
+     */
+    private int length = 0;
+    
+    /**
+     * Absolute offset of the first character in the buffer
+     */
+    private long bufferOffset = 0;
+    
+    /**
+     * Buffer offset to start the next search from
+     */
+    private int position = 0;
+    
+    private boolean eof = false;
+    
+    /**
+     * Absolute offset that the group offsets of the current match are relative to
+     */
+    private long base = 0;
+
+    protected ExpressionStreamMatcher(Expression expression, Reader reader, int maxMatchLength, int chunkSize) {
+        super(expression);
+        if (maxMatchLength < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Max match length and chunk size must be positive");
+        }
+        this.reader = reader;
+        this.maxMatchLength = maxMatchLength;
+        this.buffer = new char[maxMatchLength + CONTEXT + chunkSize];
+        this.m = expression.compiled.matcher(CharBuffer.wrap(buffer, 0, 0));
+    }
+
+    /**
+     * Find the next match in the stream.
+     * @return 
+     * @throws ExpressionException if reading from the stream fails
+     */
+    public boolean find() {
+        while (true) {
+            if (position > length) {
+                //Previous match was empty and at the end of the window
+                if (eof) {
+                    return false;
+                }
+                slide(length);
+                continue;
+            }
+            
+            m.reset(CharBuffer.wrap(buffer, 0, length));
+            m.region(position, length);
+            
+            if (m.find()) {
+                if (m.hitEnd() && !eof && m.start() > length - maxMatchLength) {
+                    //More input could change the match (or produce an earlier one) - read more and try again
+                    slide(Math.max(position, length - maxMatchLength));
+                    continue;
+                }
+                readMatch();
+                position = m.end() == m.start() ? m.end() + 1 : m.end();
+                return true;
+            }
+            
+            if (eof) {
+                return false;
+            }
+            
+            //Nothing before the last max match length characters can start a match
+            slide(Math.max(position, length - maxMatchLength));
+        }
+    }
+    
+    /**
+     * Slide the window so the next search starts at the given buffer offset - and read more input.
+     * @param next 
+     */
+    private void slide(int next) {
+        int discard = Math.max(0, Math.min(next, length) - CONTEXT);
+        if (discard > 0) {
+            System.arraycopy(buffer, discard, buffer, 0, length - discard);
+            length -= discard;
+            bufferOffset += discard;
+            next -= discard;
+        }
+        position = next;
+        
+        try {
+            int read = reader.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                eof = true;
+            } else {
+                length += read;
+            }
+        } catch (IOException ex) {
+            throw new ExpressionException("Failed to read from stream", ex);
+        }
+    }
+
+    private void readMatch() {
+        int size = expression.groupCount;
+        base = bufferOffset;
+        groups = new String[size];
+        groupStart = new int[size];
+        groupEnd = new int[size];
+        for (int i = 0; i < size; i++) {
+            groups[i] = m.group(i);
+            groupStart[i] = m.start(i);
+            groupEnd[i] = m.end(i);
+        }
+    }
+    
+    /**
+     * The absolute offset that start/end offsets of the current match are relative to.
+     * @return 
+     */
+    public long base() {
+        return base;
+    }
+    
+    public long absoluteStart() {
+        return absoluteStart(0);
+    }
+    
+    /**
+     * Get the start of the group in the entire stream - or -1 if the group did not match.
+     * @param group
+     * @return 
+     */
+    public long absoluteStart(int group) {
+        int start = start(group);
+        return start < 0 ? -1 : base + start;
+    }
+    
+    public long absoluteStart(String group) {
+        return absoluteStart(groupIndex(group));
+    }
+    
+    public long absoluteEnd() {
+        return absoluteEnd(0);
+    }
+    
+    /**
+     * Get the end of the group in the entire stream - or -1 if the group did not match.
+     * @param group
+     * @return 
+     */
+    public long absoluteEnd(int group) {
+        int end = end(group);
+        return end < 0 ? -1 : base + end;
+    }
+    
+    public long absoluteEnd(String group) {
+        return absoluteEnd(groupIndex(group));
+    }
+    
+    /**
+     * The maximum length of a match
+     * @return 
+     */
+    public int maxMatchLength() {
+        return maxMatchLength;
+    }
+
+    /**
+     * Closes the underlying reader
+     * @throws IOException 
+     */
+    public void close() throws IOException {
+        reader.close();
+    }
+}
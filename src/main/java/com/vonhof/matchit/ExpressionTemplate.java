@@ -0,0 +1,189 @@
+package com.vonhof.matchit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Replacement template for an expression - see Expression.replaceAll and Expression.replaceFirst. Templates are
+ * compiled once (every reference is resolved to the groups it may refer to) and may be shared between threads.
+ *
+ * ${name}      - The value of the named group - or of the sub expression with id name
+ * ${id.name}   - The value of the named group (or sub expression) within the sub expression with id. Paths may be
+ *                any number of sub expressions deep.
+ * ${2}         - The value of group 2 (within the expression or sub expression of the path)
+ * \$           - A literal $ (any character may be escaped with \)
+ *
+ * Groups that did not match anything are replaced with nothing.
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public final class ExpressionTemplate {
+
+    private final Expression expression;
+    private final String template;
+
+    /**
+     * The literal text before each group reference - and after the last one
+     */
+    private final String[] literals;
+
+    /**
+     * The groups each reference may refer to - the first one that matched something is used
+     */
+    private final int[][] groups;
+
+    private ExpressionTemplate(Expression expression, String template, List<String> literals, List<int[]> groups) {
+        this.expression = expression;
+        this.template = template;
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.groups = groups.toArray(new int[groups.size()][]);
+    }
+
+    /**
+     * Compile template for the (compiled) expression
+     * @param expression
+     * @param template
+     * @return
+     */
+    static ExpressionTemplate compile(Expression expression, String template) {
+        List<String> literals = new ArrayList<String>();
+        List<int[]> groups = new ArrayList<int[]>();
+        StringBuilder literal = new StringBuilder();
+
+        for(int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '\\' && i + 1 < template.length()) {
+                literal.append(template.charAt(++i));
+                continue;
+            }
+            if (c != '$' || !template.startsWith("{", i + 1)) {
+                literal.append(c);
+                continue;
+            }
+            int end = template.indexOf('}', i);
+            if (end < 0) {
+                throw new ExpressionException(String.format("Unclosed reference at index %d in template: %s",
+                                                            i, template));
+            }
+            String reference = template.substring(i + 2, end);
+
+            List<Integer> candidates = new ArrayList<Integer>();
+            resolve(expression.fragment, 0, reference.split("\\.", -1), 0, candidates);
+            if (candidates.isEmpty()) {
+                throw new ExpressionException(String.format("Unknown group %s in template: %s", reference, template));
+            }
+            Collections.sort(candidates);
+            int[] resolved = new int[candidates.size()];
+            for(int c2 = 0; c2 < resolved.length; c2++) {
+                resolved[c2] = candidates.get(c2);
+            }
+
+            literals.add(literal.toString());
+            literal.setLength(0);
+            groups.add(resolved);
+            i = end;
+        }
+        literals.add(literal.toString());
+        return new ExpressionTemplate(expression, template, literals, groups);
+    }
+
+    /**
+     * Add the groups the path (from segment) may refer to within fragment - which starts at group base.
+     */
+    private static void resolve(Fragment fragment, int base, String[] path, int segment, List<Integer> out) {
+        String name = path[segment];
+        if (segment == path.length - 1) {
+            if (!name.isEmpty() && isDigits(name)) {
+                int group = Integer.parseInt(name);
+                if (group < fragment.groupCount) {
+                    out.add(base + group);
+                }
+                return;
+            }
+            for(Entry<Integer,String> entry:fragment.groupNames.entrySet()) {
+                if (name.equals(entry.getValue())) {
+                    out.add(base + entry.getKey());
+                }
+            }
+            if (!out.isEmpty()) {
+                return;
+            }
+        }
+
+        Fragment.Reference reference = fragment.references.get(name);
+        if (reference == null) {
+            return;
+        }
+        for(Entry<Integer,String> entry:fragment.groupSubExpression.entrySet()) {
+            if (!name.equals(entry.getValue())) {
+                continue;
+            }
+            int group = base + entry.getKey();
+            if (segment == path.length - 1) {
+                out.add(group);
+            } else if (reference.definitions.length == 1) {
+                resolve(reference.definitions[0], group, path, segment + 1, out);
+            } else {
+                for(int i = 0; i < reference.definitions.length; i++) {
+                    resolve(reference.definitions[i], group + reference.definitionGroups[i], path, segment + 1, out);
+                }
+            }
+        }
+    }
+
+    private static boolean isDigits(String text) {
+        for(int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The expression this template was compiled for
+     * @return
+     */
+    public Expression expression() {
+        return expression;
+    }
+
+    public String template() {
+        return template;
+    }
+
+    /**
+     * Append the template for match - group values are appended directly from text (the text that was matched)
+     * without creating strings.
+     * @param match
+     * @param text
+     * @param out
+     * @throws IOException
+     */
+    public void appendTo(ExpressionMatch match, CharSequence text, Appendable out) throws IOException {
+        for(int i = 0; i < groups.length; i++) {
+            if (!literals[i].isEmpty()) {
+                out.append(literals[i]);
+            }
+            for(int group:groups[i]) {
+                int start = match.start(group);
+                if (start >= 0) {
+                    out.append(text, start, match.end(group));
+                    break;
+                }
+            }
+        }
+        String last = literals[groups.length];
+        if (!last.isEmpty()) {
+            out.append(last);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
@@ -0,0 +1,284 @@
+package com.vonhof.matchit;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * An expression expanded into a plain regular expression (without flags) - along with the group annotations needed
+ * to splice it into other expressions. Fragments are immutable.
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class Fragment {
+
+    /**
+     * The expression that was expanded
+     */
+    final Expression expression;
+
+    /**
+     * The expanded regular expression - sub expressions and functions inlined and named groups replaced
+     */
+    final String pattern;
+
+    /**
+     * Number of capturing groups in the pattern + 1 (for the entire match)
+     */
+    final int groupCount;
+
+    final Map<Integer,String> groupNames;
+    final Map<Integer,String> groupSubExpression;
+    final Map<String,Set<Expression>> subExpressions;
+
+    /**
+     * The references to sub expressions used directly in the expression - by id
+     */
+    final Map<String,Reference> references;
+
+    final NameTable groupNameTable;
+    final NameTable subExpressionTable;
+
+    /**
+     * Ids of all sub expressions and functions the pattern was expanded from (recursivly)
+     */
+    final Set<String> expressionIds;
+    final Set<String> functionIds;
+
+    Fragment(Expression expression, String pattern, int groupCount,
+             Map<Integer,String> groupNames, Map<Integer,String> groupSubExpression,
+             Map<String,Set<Expression>> subExpressions, Map<String,Reference> references,
+             Set<String> expressionIds, Set<String> functionIds) {
+        this.expression = expression;
+        this.pattern = pattern;
+        this.groupCount = groupCount;
+
+        for(Entry<String,Set<Expression>> entry:subExpressions.entrySet()) {
+            entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+        }
+
+        this.groupNames = Collections.unmodifiableMap(groupNames);
+        this.groupSubExpression = Collections.unmodifiableMap(groupSubExpression);
+        this.subExpressions = Collections.unmodifiableMap(subExpressions);
+        this.references = Collections.unmodifiableMap(references);
+        this.groupNameTable = NameTable.from(groupNames, groupCount);
+        this.subExpressionTable = NameTable.from(groupSubExpression, groupCount);
+        this.expressionIds = Collections.unmodifiableSet(expressionIds);
+        this.functionIds = Collections.unmodifiableSet(functionIds);
+    }
+
+    /**
+     * A reference to a sub expression - ${id} - expanded into all its definitions. A single definition is wrapped in a
+     * group - (def) - while multiple definitions are wrapped as alternatives each in their own group - ((def1)|(def2))
+     *
+     * Group indices are relative to the wrapping group (which is 0).
+     */
+    static final class Reference {
+
+        final String id;
+
+        /**
+         * The expanded definitions - in the order they were added to the context
+         */
+        final Fragment[] definitions;
+
+        /**
+         * Index of the group wrapping each definition
+         */
+        final int[] definitionGroups;
+
+        final String pattern;
+
+        /**
+         * Number of capturing groups in the pattern (including the wrapping group)
+         */
+        final int groupCount;
+
+        final Map<Integer,String> groupNames;
+        final Set<Expression> expressions;
+        final Set<String> expressionIds;
+        final Set<String> functionIds;
+
+        Reference(String id, List<Fragment> definitions, boolean factor) {
+            this.id = id;
+            this.definitions = definitions.toArray(new Fragment[definitions.size()]);
+
+            Map<Integer,String> names = new LinkedHashMap<Integer, String>();
+            Set<Expression> exprs = new LinkedHashSet<Expression>();
+            Set<String> ids = new LinkedHashSet<String>();
+            Set<String> functions = new LinkedHashSet<String>();
+            ids.add(id);
+
+            String[] patterns = new String[this.definitions.length];
+            this.definitionGroups = new int[this.definitions.length];
+            int groupOffset = this.definitions.length > 1 ? 1 : 0;
+            for(int i = 0; i < this.definitions.length; i++) {
+                Fragment definition = this.definitions[i];
+                definitionGroups[i] = groupOffset;
+                patterns[i] = definition.pattern;
+
+                for(Entry<Integer,String> entry:definition.groupNames.entrySet()) {
+                    names.put(entry.getKey() + groupOffset, entry.getValue());
+                }
+                groupOffset += definition.groupCount;
+
+                exprs.add(definition.expression);
+                ids.addAll(definition.expressionIds);
+                functions.addAll(definition.functionIds);
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("(");
+            if (patterns.length == 1) {
+                sb.append(patterns[0]);
+            } else if (factor) {
+                String[] prefixes = new String[patterns.length];
+                for(int i = 0; i < patterns.length; i++) {
+                    prefixes[i] = prefix(patterns[i]);
+                }
+                appendFactored(patterns, prefixes, 0, patterns.length, 0, sb);
+            } else {
+                for(int i = 0; i < patterns.length; i++) {
+                    if (i > 0) {
+                        sb.append("|");
+                    }
+                    sb.append("(").append(patterns[i]).append(")");
+                }
+            }
+            sb.append(")");
+
+            this.pattern = sb.toString();
+            this.groupCount = groupOffset;
+            this.groupNames = Collections.unmodifiableMap(names);
+            this.expressions = Collections.unmodifiableSet(exprs);
+            this.expressionIds = Collections.unmodifiableSet(ids);
+            this.functionIds = Collections.unmodifiableSet(functions);
+        }
+
+        /**
+         * Append definitions from-to (exclusive) - all starting with the same prefix up to depth (which has already 
+         * been appended). Consecutive definitions sharing a longer prefix are grouped after it - (def1)|(def2) becomes 
+         * ab(?:(1)|(2)) if def1 is ab1 and def2 is ab2. The definitions are kept in order and their groups are numbered 
+         * the same - but the group of a definition does not include the shared prefix.
+         */
+        private static void appendFactored(String[] patterns, String[] prefixes, int from, int to, int depth,
+                                           StringBuilder sb) {
+            for(int i = from; i < to; ) {
+                if (i > from) {
+                    sb.append("|");
+                }
+                int end = i + 1;
+                int common = prefixes[i].length();
+                while (end < to && sharedLength(prefixes[i], prefixes[end]) > depth) {
+                    common = Math.min(common, sharedLength(prefixes[i], prefixes[end]));
+                    end++;
+                }
+                if (end - i == 1) {
+                    sb.append("(").append(patterns[i].substring(depth)).append(")");
+                    i = end;
+                    continue;
+                }
+
+                sb.append(prefixes[i], depth, common);
+                sb.append("(?:");
+                appendFactored(patterns, prefixes, i, end, common, sb);
+                sb.append(")");
+                i = end;
+            }
+        }
+
+        private static int sharedLength(String a, String b) {
+            int i = 0;
+            while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Get the plain literal characters pattern starts with - as written. Stops at anything special (escapes, 
+         * groups, classes etc.) and before characters that are quantified. Patterns with alternatives outside groups 
+         * have no prefix.
+         */
+        private static String prefix(String pattern) {
+            if (hasAlternatives(pattern)) {
+                return "";
+            }
+            int i = 0;
+            while (i < pattern.length() && !isSpecial(pattern.charAt(i))) {
+                if (i + 1 < pattern.length() && isQuantifier(pattern.charAt(i + 1))) {
+                    break;
+                }
+                i++;
+            }
+            return pattern.substring(0, i);
+        }
+
+        private static boolean isSpecial(char c) {
+            return "\\[](){}.*+?^$|#".indexOf(c) > -1 || Character.isWhitespace(c) || Character.isSurrogate(c);
+        }
+
+        private static boolean isQuantifier(char c) {
+            return c == '*' || c == '+' || c == '?' || c == '{';
+        }
+
+        /**
+         * Whether pattern has an alternation outside of any group
+         */
+        private static boolean hasAlternatives(String pattern) {
+            int depth = 0;
+            for(int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\\') {
+                    if (pattern.startsWith("\\Q", i)) {
+                        int end = pattern.indexOf("\\E", i + 2);
+                        if (end < 0) {
+                            return false;
+                        }
+                        i = end + 1;
+                    } else {
+                        i++;
+                    }
+                } else if (c == '[') {
+                    i = classEnd(pattern, i);
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == '|' && depth == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Get the index of the ] closing the character class starting at start
+         */
+        private static int classEnd(String pattern, int start) {
+            int depth = 0;
+            for(int i = start; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '[') {
+                    depth++;
+                    //A ] right after [ or [^ is a literal
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '^') {
+                        i++;
+                    }
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == ']') {
+                        i++;
+                    }
+                } else if (c == ']' && --depth == 0) {
+                    return i;
+                }
+            }
+            return pattern.length();
+        }
+    }
+}
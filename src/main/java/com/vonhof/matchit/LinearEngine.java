@@ -0,0 +1,395 @@
+package com.vonhof.matchit;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Engine that matches in time linear to the length of the input - see MatchEngine.LINEAR
+ * 
+ * Patterns are compiled into a LinearProgram which is run by a Pike VM: All alternatives are followed in parallel - 
+ * one thread per program position, in priority order - so each character of the input is only examined once per 
+ * program instruction. Thread priorities make the matches (and groups) the same as those found by 
+ * java.util.regex - except for groups inside a repeat that is itself repeated: These are always taken from the last
+ * iteration, where java.util.regex may report them from an earlier iteration of the outer repeat. Ie. 
+ * (?:[^a](?<N>[ab]){1,3}){2} finds N at 4 in "xabyb" but java.util.regex finds it at 2.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class LinearEngine extends MatchEngine {
+
+    @Override
+    public EnginePattern compile(String regex) {
+        LinearProgram program = LinearProgram.compile(Pattern.compile(regex));
+        if (program == null) {
+            throw new ExpressionException(String.format("Expression not supported by the linear engine: %s", regex));
+        }
+        return new LinearPattern(regex, program);
+    }
+
+    @Override
+    public String toString() {
+        return "LINEAR";
+    }
+    
+    static final class LinearPattern extends EnginePattern {
+        private final String regex;
+        private final LinearProgram program;
+
+        LinearPattern(String regex, LinearProgram program) {
+            this.regex = regex;
+            this.program = program;
+        }
+
+        @Override
+        public String pattern() {
+            return regex;
+        }
+
+        @Override
+        public MatchEngine engine() {
+            return MatchEngine.LINEAR;
+        }
+
+        @Override
+        public EngineMatcher matcher(CharSequence text) {
+            return new LinearMatcher(program, text);
+        }
+    }
+    
+    /**
+     * Threads of one step of the VM - a sparse set of program positions in priority order, each with the position 
+     * its match started at and its captures. Captures are copy on write - so threads share them until they differ.
+     */
+    private static final class ThreadList {
+        private final int[] sparse;
+        private final int[] dense;
+        private final int[] starts;
+        private final int[][] captures;
+        private int size = 0;
+
+        ThreadList(int length) {
+            sparse = new int[length];
+            dense = new int[length];
+            starts = new int[length];
+            captures = new int[length][];
+        }
+        
+        boolean contains(int pc) {
+            int i = sparse[pc];
+            return i < size && dense[i] == pc;
+        }
+        
+        void add(int pc, int start, int[] caps) {
+            sparse[pc] = size;
+            dense[size] = pc;
+            starts[size] = start;
+            captures[size] = caps;
+            size++;
+        }
+        
+        void clear() {
+            Arrays.fill(captures, 0, size, null);
+            size = 0;
+        }
+    }
+    
+    static final class LinearMatcher extends EngineMatcher {
+        private final LinearProgram program;
+        private final int[] noCaptures;
+        
+        private ThreadList current;
+        private ThreadList next;
+        private final int[] stackPc;
+        private final int[] stackStart;
+        private final int[][] stackCaps;
+        
+        private CharSequence text;
+        private int from;
+        private int to;
+        
+        /**
+         * Captures of the current match - start and end offset of each group. Null if no match.
+         */
+        private int[] groups;
+        
+        /**
+         * Start and end of the last match - as in java.util.regex.Matcher
+         */
+        private int first = -1;
+        private int last = 0;
+        private boolean hitEnd = false;
+
+        LinearMatcher(LinearProgram program, CharSequence text) {
+            this.program = program;
+            this.noCaptures = new int[(program.groupCount + 1) * 2];
+            Arrays.fill(noCaptures, -1);
+            this.current = new ThreadList(program.length());
+            this.next = new ThreadList(program.length());
+            this.stackPc = new int[program.length() * 2 + 2];
+            this.stackStart = new int[stackPc.length];
+            this.stackCaps = new int[stackPc.length][];
+            reset(text);
+        }
+
+        @Override
+        public boolean find() {
+            int start = last;
+            if (start == first) {
+                start++;
+            }
+            if (start < from) {
+                start = from;
+            }
+            if (start > to) {
+                groups = null;
+                return false;
+            }
+            return search(start, false);
+        }
+
+        @Override
+        public boolean find(int start) {
+            if (start < 0 || start > text.length()) {
+                throw new IndexOutOfBoundsException("Illegal start index");
+            }
+            reset();
+            return search(start, false);
+        }
+
+        @Override
+        public boolean lookingAt() {
+            return search(from, true);
+        }
+
+        @Override
+        public EngineMatcher region(int start, int end) {
+            if (start < 0 || start > end || end > text.length()) {
+                throw new IndexOutOfBoundsException("Illegal region");
+            }
+            reset();
+            from = start;
+            to = end;
+            return this;
+        }
+
+        @Override
+        public EngineMatcher reset() {
+            from = 0;
+            to = text.length();
+            first = -1;
+            last = 0;
+            groups = null;
+            return this;
+        }
+
+        @Override
+        public EngineMatcher reset(CharSequence text) {
+            this.text = text;
+            return reset();
+        }
+
+        @Override
+        public boolean hitEnd() {
+            return hitEnd;
+        }
+        
+        private boolean search(int start, boolean anchored) {
+            final int[] op = program.op;
+            final int[] arg1 = program.arg1;
+            final LinearProgram.CharClass[] classes = program.classes;
+            
+            hitEnd = false;
+            current.clear();
+            int[] matched = null;
+            int matchedStart = -1;
+            int pos = start;
+            while (true) {
+                if (matched == null && (!anchored || pos == start)) {
+                    //Lowest priority: a new thread starting at this position
+                    addThread(current, 0, pos, pos, noCaptures);
+                }
+                if (current.size == 0) {
+                    break;
+                }
+                
+                int cp = -1;
+                int nextPos = pos;
+                if (pos < to) {
+                    cp = text.charAt(pos);
+                    nextPos = pos + 1;
+                    if (Character.isHighSurrogate((char) cp) && nextPos < to) {
+                        char low = text.charAt(nextPos);
+                        if (Character.isLowSurrogate(low)) {
+                            cp = Character.toCodePoint((char) cp, low);
+                            nextPos++;
+                        }
+                    }
+                }
+                
+                next.clear();
+                for(int i = 0; i < current.size; i++) {
+                    int pc = current.dense[i];
+                    int code = op[pc];
+                    if (code == LinearProgram.CHAR) {
+                        if (cp < 0) {
+                            hitEnd = true;
+                        } else if (classes[arg1[pc]].matches(cp)) {
+                            addThread(next, pc + 1, nextPos, current.starts[i], current.captures[i]);
+                        }
+                    } else if (code == LinearProgram.MATCH) {
+                        //Lower priority threads can not win anymore
+                        matched = current.captures[i];
+                        matchedStart = current.starts[i];
+                        break;
+                    }
+                }
+                
+                ThreadList tmp = current;
+                current = next;
+                next = tmp;
+                
+                if (cp < 0) {
+                    break;
+                }
+                pos = nextPos;
+            }
+            current.clear();
+            
+            if (matched == null) {
+                groups = null;
+                first = -1;
+                return false;
+            }
+            //The captures of a match are never shared (the group 0 end was just saved)
+            matched[0] = matchedStart;
+            groups = matched;
+            first = matched[0];
+            last = matched[1];
+            return true;
+        }
+        
+        /**
+         * Add thread at pc - and follow all empty transitions (in priority order) to the instructions that consume 
+         * input or match.
+         */
+        private void addThread(ThreadList list, int pc, int pos, int start, int[] caps) {
+            final int[] op = program.op;
+            final int[] arg1 = program.arg1;
+            final int[] arg2 = program.arg2;
+            
+            int sp = 0;
+            push(sp++, pc, start, caps);
+            while (sp > 0) {
+                sp--;
+                pc = stackPc[sp];
+                start = stackStart[sp];
+                caps = stackCaps[sp];
+                stackCaps[sp] = null;
+                if (list.contains(pc)) {
+                    continue;
+                }
+                list.add(pc, start, caps);
+                switch (op[pc]) {
+                    case LinearProgram.JMP:
+                        push(sp++, arg1[pc], start, caps);
+                        break;
+                    case LinearProgram.SPLIT:
+                        push(sp++, arg2[pc], start, caps);
+                        push(sp++, arg1[pc], start, caps);
+                        break;
+                    case LinearProgram.SAVE:
+                        int[] copy = caps.clone();
+                        copy[arg1[pc]] = pos;
+                        push(sp++, pc + 1, start, copy);
+                        break;
+                    case LinearProgram.ASSERT:
+                        if (assertion(arg1[pc], pos)) {
+                            push(sp++, pc + 1, start, caps);
+                        }
+                        break;
+                    default:
+                        //CHAR and MATCH wait for the next step
+                        break;
+                }
+            }
+        }
+        
+        private void push(int sp, int pc, int start, int[] caps) {
+            stackPc[sp] = pc;
+            stackStart[sp] = start;
+            stackCaps[sp] = caps;
+        }
+        
+        private boolean assertion(int kind, int pos) {
+            int length = text.length();
+            switch (kind) {
+                case LinearProgram.ASSERT_BEGIN:
+                    return pos == 0;
+                case LinearProgram.ASSERT_END:
+                    if (pos >= to) {
+                        hitEnd = true;
+                    }
+                    return pos == length;
+                case LinearProgram.ASSERT_DOLLAR:
+                    //End of input - or before a final line terminator (same as java.util.regex)
+                    if (pos < length - 2) {
+                        return false;
+                    }
+                    if (pos == length - 2 && (text.charAt(pos) != '\r' || text.charAt(pos + 1) != '\n')) {
+                        return false;
+                    }
+                    if (pos < length) {
+                        char c = text.charAt(pos);
+                        if (c == '\n') {
+                            if (pos > 0 && text.charAt(pos - 1) == '\r') {
+                                return false;
+                            }
+                        } else if (c != '\r' && c != '\u0085' && (c | 1) != '\u2029') {
+                            return false;
+                        }
+                    }
+                    hitEnd = true;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        
+        private void ensureMatch() {
+            if (groups == null) {
+                throw new IllegalStateException("No match available");
+            }
+        }
+        
+        private void ensureGroup(int group) {
+            ensureMatch();
+            if (group < 0 || group > program.groupCount) {
+                throw new IndexOutOfBoundsException("No group " + group);
+            }
+        }
+
+        public int start(int group) {
+            ensureGroup(group);
+            return groups[group * 2];
+        }
+
+        public int end(int group) {
+            ensureGroup(group);
+            return groups[group * 2 + 1];
+        }
+
+        public String group(int group) {
+            ensureGroup(group);
+            int start = groups[group * 2];
+            int end = groups[group * 2 + 1];
+            if (start < 0 || end < 0) {
+                return null;
+            }
+            return text.subSequence(start, end).toString();
+        }
+
+        public int groupCount() {
+            return program.groupCount;
+        }
+    }
+}
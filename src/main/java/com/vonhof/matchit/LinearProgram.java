@@ -0,0 +1,802 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Program for the linear engine - compiled from a java.util.regex expression. 
+ * 
+ * Every construct that matches a single character (literals, classes, escapes like \d and .) is delegated to a 
+ * java.util.regex.Pattern of its own - so character semantics (case folding, unicode classes etc.) are exactly those of 
+ * java.util.regex. The rest of the expression (sequences, alternations, groups and quantifiers) is compiled into 
+ * instructions for a Pike VM - see LinearEngine.
+ * 
+ * Expressions with constructs whose semantics can not be simulated in linear time (or simply are not implemented) 
+ * are rejected - compile returns null.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class LinearProgram {
+    
+    static final int CHAR = 0;
+    static final int SPLIT = 1;
+    static final int JMP = 2;
+    static final int SAVE = 3;
+    static final int ASSERT = 4;
+    static final int MATCH = 5;
+    
+    static final int ASSERT_BEGIN = 0;
+    static final int ASSERT_END = 1;
+    static final int ASSERT_DOLLAR = 2;
+    
+    /**
+     * Max amount of instructions - counted repetitions of large sub expressions can make programs huge.
+     */
+    private static final int MAX_INSTRUCTIONS = 200000;
+    
+    final int[] op;
+    final int[] arg1;
+    final int[] arg2;
+    final CharClass[] classes;
+    
+    /**
+     * Amount of capturing groups (excluding group 0)
+     */
+    final int groupCount;
+    
+    /**
+     * Whether the expression repeats a part that can match in more than one way (nested quantifiers or quantified 
+     * alternations) - which may take exponential time to backtrack
+     */
+    final boolean ambiguous;
+
+    private LinearProgram(int[] op, int[] arg1, int[] arg2, CharClass[] classes, int groupCount, boolean ambiguous) {
+        this.op = op;
+        this.arg1 = arg1;
+        this.arg2 = arg2;
+        this.classes = classes;
+        this.groupCount = groupCount;
+        this.ambiguous = ambiguous;
+    }
+    
+    int length() {
+        return op.length;
+    }
+    
+    /**
+     * Compile the expression of pattern into program - or return null if the expression is not supported. The 
+     * pattern is only used to make sure the expression is valid.
+     * @param pattern
+     * @return 
+     */
+    static LinearProgram compile(Pattern pattern) {
+        try {
+            Parser parser = new Parser(pattern.pattern());
+            Node root = parser.parse();
+            
+            //The start of group 0 is tracked by the VM for each thread
+            Emitter emitter = new Emitter();
+            root.emit(emitter);
+            emitter.emit(SAVE, 1, 0);
+            emitter.emit(MATCH, 0, 0);
+            
+            return emitter.toProgram(parser.classList, parser.groups, parser.ambiguous);
+        } catch (Unsupported ex) {
+            return null;
+        }
+    }
+    
+    /**
+     * Whether a repetition from min to max (-1 for unbounded) may repeat a varying amount of times
+     */
+    private static boolean variable(int min, int max) {
+        return max < 0 || max > min;
+    }
+    
+    private static final class Unsupported extends Exception {
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+    
+    private static final Unsupported UNSUPPORTED = new Unsupported();
+    
+    private static final class Emitter {
+        private int[] op = new int[64];
+        private int[] arg1 = new int[64];
+        private int[] arg2 = new int[64];
+        private int size = 0;
+        
+        int emit(int code, int a1, int a2) throws Unsupported {
+            if (size == op.length) {
+                if (size >= MAX_INSTRUCTIONS) {
+                    throw UNSUPPORTED;
+                }
+                op = Arrays.copyOf(op, size * 2);
+                arg1 = Arrays.copyOf(arg1, size * 2);
+                arg2 = Arrays.copyOf(arg2, size * 2);
+            }
+            op[size] = code;
+            arg1[size] = a1;
+            arg2[size] = a2;
+            return size++;
+        }
+        
+        int next() {
+            return size;
+        }
+        
+        LinearProgram toProgram(List<CharClass> classes, int groups, boolean ambiguous) {
+            return new LinearProgram(Arrays.copyOf(op, size), 
+                                     Arrays.copyOf(arg1, size), 
+                                     Arrays.copyOf(arg2, size), 
+                                     classes.toArray(new CharClass[classes.size()]), 
+                                     groups,
+                                     ambiguous);
+        }
+    }
+    
+    private static abstract class Node {
+        abstract boolean nullable();
+        
+        /**
+         * Whether the node can match in more than one way - ie. contains an alternation or a variable repetition
+         */
+        abstract boolean branches();
+        abstract void emit(Emitter e) throws Unsupported;
+    }
+    
+    private static final class Atom extends Node {
+        private final int classIndex;
+
+        Atom(int classIndex) {
+            this.classIndex = classIndex;
+        }
+        
+        boolean branches() {
+            return false;
+        }
+
+        boolean nullable() {
+            return false;
+        }
+
+        void emit(Emitter e) throws Unsupported {
+            e.emit(CHAR, classIndex, 0);
+        }
+    }
+    
+    private static final class Assert extends Node {
+        private final int kind;
+
+        Assert(int kind) {
+            this.kind = kind;
+        }
+        
+        boolean branches() {
+            return false;
+        }
+
+        boolean nullable() {
+            return true;
+        }
+
+        void emit(Emitter e) throws Unsupported {
+            e.emit(ASSERT, kind, 0);
+        }
+    }
+    
+    private static final class Sequence extends Node {
+        private final List<Node> nodes;
+
+        Sequence(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+        
+        boolean branches() {
+            for(Node node:nodes) {
+                if (node.branches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean nullable() {
+            for(Node node:nodes) {
+                if (!node.nullable()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void emit(Emitter e) throws Unsupported {
+            for(Node node:nodes) {
+                node.emit(e);
+            }
+        }
+    }
+    
+    private static final class Alternation extends Node {
+        private final List<Node> alternatives;
+
+        Alternation(List<Node> alternatives) {
+            this.alternatives = alternatives;
+        }
+        
+        boolean branches() {
+            return true;
+        }
+
+        boolean nullable() {
+            for(Node node:alternatives) {
+                if (node.nullable()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void emit(Emitter e) throws Unsupported {
+            List<Integer> jumps = new ArrayList<Integer>();
+            for(int i = 0; i < alternatives.size(); i++) {
+                if (i < alternatives.size() - 1) {
+                    int split = e.emit(SPLIT, 0, 0);
+                    e.arg1[split] = e.next();
+                    alternatives.get(i).emit(e);
+                    jumps.add(e.emit(JMP, 0, 0));
+                    e.arg2[split] = e.next();
+                } else {
+                    alternatives.get(i).emit(e);
+                }
+            }
+            for(int jump:jumps) {
+                e.arg1[jump] = e.next();
+            }
+        }
+    }
+    
+    private static final class Group extends Node {
+        private final int index;
+        private final Node body;
+
+        Group(int index, Node body) {
+            this.index = index;
+            this.body = body;
+        }
+        
+        boolean branches() {
+            return body.branches();
+        }
+
+        boolean nullable() {
+            return body.nullable();
+        }
+
+        void emit(Emitter e) throws Unsupported {
+            e.emit(SAVE, index * 2, 0);
+            body.emit(e);
+            e.emit(SAVE, index * 2 + 1, 0);
+        }
+    }
+    
+    private static final class Repeat extends Node {
+        private final Node body;
+        private final int min;
+        private final int max;
+        private final boolean greedy;
+
+        Repeat(Node body, int min, int max, boolean greedy) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+            this.greedy = greedy;
+        }
+        
+        boolean branches() {
+            return variable(min, max) || body.branches();
+        }
+
+        boolean nullable() {
+            return min == 0 || body.nullable();
+        }
+        
+        private int split(Emitter e) throws Unsupported {
+            return e.emit(SPLIT, 0, 0);
+        }
+        
+        /**
+         * Point the preferred branch of split to body and the other to exit (or the reverse for lazy)
+         */
+        private void patch(Emitter e, int split, int body, int exit) {
+            e.arg1[split] = greedy ? body : exit;
+            e.arg2[split] = greedy ? exit : body;
+        }
+
+        void emit(Emitter e) throws Unsupported {
+            for(int i = 0; i < min; i++) {
+                body.emit(e);
+            }
+            if (max < 0) {
+                int split = split(e);
+                body.emit(e);
+                e.emit(JMP, split, 0);
+                patch(e, split, split + 1, e.next());
+            } else {
+                List<Integer> splits = new ArrayList<Integer>();
+                for(int i = min; i < max; i++) {
+                    splits.add(split(e));
+                    body.emit(e);
+                }
+                int exit = e.next();
+                for(int split:splits) {
+                    patch(e, split, split + 1, exit);
+                }
+            }
+        }
+    }
+    
+    private static final class Parser {
+        private final String regex;
+        private int pos = 0;
+        private int flags = 0;
+        private int groups = 0;
+        private boolean ambiguous = false;
+        private final List<CharClass> classList = new ArrayList<CharClass>();
+        private final Map<String,Integer> classIndex = new HashMap<String, Integer>();
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+        
+        Node parse() throws Unsupported {
+            Node out = parseAlternation();
+            if (pos < regex.length()) {
+                throw UNSUPPORTED;
+            }
+            return out;
+        }
+        
+        private boolean more() {
+            return pos < regex.length();
+        }
+        
+        private char peek() {
+            return regex.charAt(pos);
+        }
+        
+        private Node parseAlternation() throws Unsupported {
+            List<Node> alternatives = new ArrayList<Node>();
+            alternatives.add(parseSequence());
+            while (more() && peek() == '|') {
+                pos++;
+                alternatives.add(parseSequence());
+            }
+            if (alternatives.size() == 1) {
+                return alternatives.get(0);
+            }
+            return new Alternation(alternatives);
+        }
+        
+        private Node parseSequence() throws Unsupported {
+            List<Node> nodes = new ArrayList<Node>();
+            while (more() && peek() != '|' && peek() != ')') {
+                if (regex.startsWith("\\Q", pos)) {
+                    parseQuoted(nodes);
+                    continue;
+                }
+                Node node = parseAtom();
+                if (node == null) {
+                    continue;
+                }
+                nodes.add(parseQuantifier(node));
+            }
+            return new Sequence(nodes);
+        }
+        
+        private void parseQuoted(List<Node> nodes) throws Unsupported {
+            pos += 2;
+            int end = regex.indexOf("\\E", pos);
+            int resume = end < 0 ? regex.length() : end + 2;
+            if (end < 0) {
+                end = regex.length();
+            }
+            if (pos == end) {
+                pos = resume;
+                return;
+            }
+            while (pos < end) {
+                int cp = regex.codePointAt(pos);
+                pos += Character.charCount(cp);
+                Node node = literal(cp);
+                if (pos == end) {
+                    //Quantifiers apply to the last quoted character
+                    pos = resume;
+                    node = parseQuantifier(node);
+                }
+                nodes.add(node);
+            }
+        }
+        
+        private Node parseAtom() throws Unsupported {
+            char c = peek();
+            switch (c) {
+                case '(':
+                    return parseGroup();
+                case '[':
+                    return atom(regex.substring(pos, pos = classEnd(pos)));
+                case '.':
+                    pos++;
+                    return atom(".");
+                case '^':
+                    pos++;
+                    if ((flags & Pattern.MULTILINE) != 0) {
+                        throw UNSUPPORTED;
+                    }
+                    return new Assert(ASSERT_BEGIN);
+                case '$':
+                    pos++;
+                    if ((flags & (Pattern.MULTILINE | Pattern.UNIX_LINES)) != 0) {
+                        throw UNSUPPORTED;
+                    }
+                    return new Assert(ASSERT_DOLLAR);
+                case '\\':
+                    return parseEscape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw UNSUPPORTED;
+                default:
+                    if ((flags & Pattern.COMMENTS) != 0) {
+                        throw UNSUPPORTED;
+                    }
+                    int cp = regex.codePointAt(pos);
+                    pos += Character.charCount(cp);
+                    return literal(cp);
+            }
+        }
+        
+        private Node parseEscape() throws Unsupported {
+            int start = pos;
+            pos++;
+            if (!more()) {
+                throw UNSUPPORTED;
+            }
+            char c = peek();
+            pos++;
+            switch (c) {
+                case 'A':
+                    return new Assert(ASSERT_BEGIN);
+                case 'z':
+                    return new Assert(ASSERT_END);
+                case 'd': case 'D': case 'w': case 'W': case 's': case 'S':
+                case 'h': case 'H': case 'v': case 'V':
+                case 't': case 'n': case 'r': case 'f': case 'a': case 'e':
+                    return atom(regex.substring(start, pos));
+                case '0':
+                    //Octal - up to 3 digits (only if the first is 0-3)
+                    for(int digits = 0; digits < 3 && more() && peek() >= '0' && peek() <= '7'; digits++) {
+                        if (digits == 2 && regex.charAt(pos - 2) > '3') {
+                            break;
+                        }
+                        pos++;
+                    }
+                    return atom(regex.substring(start, pos));
+                case 'x':
+                    if (more() && peek() == '{') {
+                        pos = regex.indexOf('}', pos) + 1;
+                        if (pos == 0) {
+                            throw UNSUPPORTED;
+                        }
+                    } else {
+                        pos += 2;
+                    }
+                    return atom(regex.substring(start, pos));
+                case 'u':
+                    pos += 4;
+                    if (Character.isSurrogate((char) Integer.parseInt(regex.substring(start + 2, pos), 16))) {
+                        //Surrogate pairs written as two escapes form a single code point
+                        throw UNSUPPORTED;
+                    }
+                    return atom(regex.substring(start, pos));
+                case 'c':
+                    pos++;
+                    return atom(regex.substring(start, pos));
+                case 'p':
+                case 'P':
+                    if (more() && peek() == '{') {
+                        pos = regex.indexOf('}', pos) + 1;
+                        if (pos == 0) {
+                            throw UNSUPPORTED;
+                        }
+                    } else {
+                        pos++;
+                    }
+                    return atom(regex.substring(start, pos));
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        //Back references, word boundaries, \G, \Z, \R, \X etc.
+                        throw UNSUPPORTED;
+                    }
+                    return atom(regex.substring(start, pos));
+            }
+        }
+        
+        private Node parseGroup() throws Unsupported {
+            pos++;
+            int savedFlags = flags;
+            int index = -1;
+            if (more() && peek() == '?') {
+                pos++;
+                if (!more()) {
+                    throw UNSUPPORTED;
+                }
+                char c = peek();
+                if (c == ':') {
+                    pos++;
+                } else if (c == '<') {
+                    pos++;
+                    if (!more() || peek() == '=' || peek() == '!') {
+                        //Look behind
+                        throw UNSUPPORTED;
+                    }
+                    int end = regex.indexOf('>', pos);
+                    if (end < 0) {
+                        throw UNSUPPORTED;
+                    }
+                    pos = end + 1;
+                    index = ++groups;
+                } else if (c == '=' || c == '!' || c == '>') {
+                    //Look ahead and atomic groups
+                    throw UNSUPPORTED;
+                } else {
+                    boolean on = true;
+                    while (more() && peek() != ')' && peek() != ':') {
+                        int flag = flag(peek());
+                        if (peek() == '-') {
+                            on = false;
+                        } else if (on) {
+                            flags |= flag;
+                        } else {
+                            flags &= ~flag;
+                        }
+                        pos++;
+                    }
+                    if (!more()) {
+                        throw UNSUPPORTED;
+                    }
+                    if (peek() == ')') {
+                        //Flags apply to the rest of the enclosing group
+                        pos++;
+                        return null;
+                    }
+                    pos++;
+                }
+            } else {
+                index = ++groups;
+            }
+            
+            Node body = parseAlternation();
+            if (!more() || peek() != ')') {
+                throw UNSUPPORTED;
+            }
+            pos++;
+            flags = savedFlags;
+            
+            if (index < 0) {
+                return body;
+            }
+            return new Group(index, body);
+        }
+        
+        private int flag(char c) throws Unsupported {
+            switch (c) {
+                case 'i':
+                    return Pattern.CASE_INSENSITIVE;
+                case 's':
+                    return Pattern.DOTALL;
+                case 'u':
+                    return Pattern.UNICODE_CASE;
+                case 'm':
+                    return Pattern.MULTILINE;
+                case 'd':
+                    return Pattern.UNIX_LINES;
+                case 'U':
+                    return Pattern.UNICODE_CHARACTER_CLASS | Pattern.UNICODE_CASE;
+                case '-':
+                    return 0;
+                default:
+                    throw UNSUPPORTED;
+            }
+        }
+        
+        private Node parseQuantifier(Node node) throws Unsupported {
+            if (!more()) {
+                return node;
+            }
+            int min;
+            int max;
+            char c = peek();
+            switch (c) {
+                case '*':
+                    min = 0;
+                    max = -1;
+                    pos++;
+                    break;
+                case '+':
+                    min = 1;
+                    max = -1;
+                    pos++;
+                    break;
+                case '?':
+                    min = 0;
+                    max = 1;
+                    pos++;
+                    break;
+                case '{':
+                    int end = regex.indexOf('}', pos);
+                    if (end < 0) {
+                        throw UNSUPPORTED;
+                    }
+                    String[] parts = regex.substring(pos + 1, end).split(",", -1);
+                    try {
+                        min = Integer.parseInt(parts[0].trim());
+                        if (parts.length == 1) {
+                            max = min;
+                        } else if (parts[1].trim().isEmpty()) {
+                            max = -1;
+                        } else {
+                            max = Integer.parseInt(parts[1].trim());
+                        }
+                    } catch (NumberFormatException ex) {
+                        throw UNSUPPORTED;
+                    }
+                    pos = end + 1;
+                    break;
+                default:
+                    return node;
+            }
+            boolean greedy = true;
+            if (more() && peek() == '?') {
+                greedy = false;
+                pos++;
+            } else if (more() && peek() == '+') {
+                //Possessive
+                throw UNSUPPORTED;
+            }
+            if (node instanceof Assert) {
+                throw UNSUPPORTED;
+            }
+            if (max != 1 && node.nullable()) {
+                //java.util.regex stops repeating on empty iterations - which the Pike VM can not mimic
+                throw UNSUPPORTED;
+            }
+            if (variable(min, max) && node.branches()) {
+                ambiguous = true;
+            }
+            return new Repeat(node, min, max, greedy);
+        }
+        
+        /**
+         * Find the end (exclusive) of the character class starting at start
+         */
+        private int classEnd(int start) throws Unsupported {
+            int i = start;
+            int depth = 0;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    if (regex.startsWith("\\Q", i)) {
+                        int end = regex.indexOf("\\E", i + 2);
+                        if (end < 0) {
+                            throw UNSUPPORTED;
+                        }
+                        i = end + 2;
+                    } else {
+                        i += 2;
+                    }
+                } else if (c == '[') {
+                    depth++;
+                    i++;
+                    //A ] right after [ or [^ is a literal
+                    if (i < regex.length() && regex.charAt(i) == '^') {
+                        i++;
+                    }
+                    if (i < regex.length() && regex.charAt(i) == ']') {
+                        i++;
+                    }
+                } else if (c == ']') {
+                    depth--;
+                    i++;
+                    if (depth == 0) {
+                        return i;
+                    }
+                } else {
+                    i++;
+                }
+            }
+            throw UNSUPPORTED;
+        }
+        
+        private Node literal(int cp) throws Unsupported {
+            return atom(String.format("\\x{%x}", cp));
+        }
+        
+        private Node atom(String text) throws Unsupported {
+            String key = flags + ":" + text;
+            Integer index = classIndex.get(key);
+            if (index == null) {
+                try {
+                    classList.add(new CharClass(text, flags));
+                } catch (PatternSyntaxException ex) {
+                    throw UNSUPPORTED;
+                }
+                index = classList.size() - 1;
+                classIndex.put(key, index);
+            }
+            return new Atom(index);
+        }
+    }
+    
+    /**
+     * Matches a single code point - using java.util.regex. Results for Latin-1 are precomputed, results for the rest 
+     * of the basic multilingual plane are cached when first seen - in pages of PAGE_SIZE code points, so only the 
+     * pages of the scripts actually matched take up memory.
+     */
+    static final class CharClass {
+        private static final int PAGE_SIZE = 256;
+        
+        private final Pattern pattern;
+        private final long[] latin1 = new long[4];
+        
+        /**
+         * Cached results by page - 0 if not yet tested, 1 if matching and 2 if not.
+         */
+        private volatile byte[][] pages;
+
+        CharClass(String text, int flags) {
+            this.pattern = Pattern.compile(text, flags);
+            for(int c = 0; c < 256; c++) {
+                if (test(c)) {
+                    latin1[c >>> 6] |= 1L << (c & 63);
+                }
+            }
+        }
+        
+        boolean matches(int cp) {
+            if (cp < 256) {
+                return (latin1[cp >>> 6] & (1L << (cp & 63))) != 0;
+            }
+            if (cp >= 65536) {
+                return test(cp);
+            }
+            byte[][] cache = pages;
+            if (cache == null) {
+                cache = new byte[65536 / PAGE_SIZE][];
+                pages = cache;
+            }
+            byte[] page = cache[cp / PAGE_SIZE];
+            if (page == null) {
+                page = new byte[PAGE_SIZE];
+                cache[cp / PAGE_SIZE] = page;
+            }
+            byte state = page[cp % PAGE_SIZE];
+            if (state == 0) {
+                state = test(cp) ? (byte) 1 : (byte) 2;
+                page[cp % PAGE_SIZE] = state;
+            }
+            return state == 1;
+        }
+        
+        private boolean test(int cp) {
+            return pattern.matcher(new String(Character.toChars(cp))).matches();
+        }
+    }
+}
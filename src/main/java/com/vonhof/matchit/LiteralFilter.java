@@ -0,0 +1,901 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Literals that every match of a regular expression must contain - found when compiling and used to skip text that
+ * can not match before running the match engine.
+ *
+ * The expression is parsed into the literal factors of each part: the exact string it always matches (if any), the
+ * prefix and suffix every match of it starts and ends with and a set of literals of which every match contains at
+ * least one. Anything that is not a plain literal (classes, back references, optional parts etc.) simply has no
+ * factors - so the literals found are always required, but not every required literal is found.
+ *
+ * Literals are compared case insensitively (using the same case folding as java.util.regex with UNICODE_CASE) -
+ * which is required for expressions compiled with (?i) and merely less selective for the rest.
+ *
+ * If the literals are also prefixes of every match the filter can skip directly to the next occurrence - otherwise
+ * it can only reject searches when no literal occurs in the rest of the region.
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class LiteralFilter {
+
+    /**
+     * Max amount of alternative literals to look for
+     */
+    private static final int MAX_LITERALS = 8;
+
+    /**
+     * Max length of the literals tracked while parsing
+     */
+    private static final int MAX_LENGTH = 64;
+
+    private static final char[] LATIN1 = new char[256];
+
+    static {
+        for(char c = 0; c < 256; c++) {
+            LATIN1[c] = Character.toLowerCase(Character.toUpperCase(c));
+        }
+    }
+
+    /**
+     * The literals (case folded) - every match contains at least one of them
+     */
+    private final char[][] literals;
+    private final char[] first;
+    private final int minLength;
+
+    /**
+     * Whether every match starts with one of the literals
+     */
+    final boolean prefix;
+
+    private LiteralFilter(List<String> literals, boolean prefix) {
+        this.literals = new char[literals.size()][];
+        this.first = new char[literals.size()];
+        int min = Integer.MAX_VALUE;
+        for(int i = 0; i < literals.size(); i++) {
+            this.literals[i] = literals.get(i).toCharArray();
+            this.first[i] = this.literals[i][0];
+            min = Math.min(min, this.literals[i].length);
+        }
+        this.minLength = min;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Wrap pattern in a filter - or return it as is if no required literals were found
+     * @param pattern
+     * @return
+     */
+    static EnginePattern filter(EnginePattern pattern) {
+        LiteralFilter filter = compile(pattern.pattern());
+        if (filter == null) {
+            return pattern;
+        }
+        return new FilteredPattern(pattern, filter);
+    }
+
+    /**
+     * Find the required literals of the regular expression - returns null if none were found
+     * @param regex
+     * @return
+     */
+    static LiteralFilter compile(String regex) {
+        try {
+            Factors factors = new Parser(regex).parse();
+            if (factors.required == null) {
+                return null;
+            }
+            return new LiteralFilter(factors.required, factors.requiredPrefix);
+        } catch (Unsupported ex) {
+            return null;
+        } catch (StackOverflowError ex) {
+            return null;
+        }
+    }
+
+    /**
+     * The literals looked for
+     * @return
+     */
+    List<String> literals() {
+        List<String> out = new ArrayList<String>(literals.length);
+        for(char[] literal:literals) {
+            out.add(new String(literal));
+        }
+        return out;
+    }
+
+    static char fold(char c) {
+        if (c < 256) {
+            return LATIN1[c];
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Find the first index from start where one of the literals occurs - ending before end.
+     * @param text
+     * @param start
+     * @param end
+     * @return The index or -1 if none of the literals occur
+     */
+    int indexOf(CharSequence text, int start, int end) {
+        int last = end - minLength;
+        for(int i = start; i <= last; i++) {
+            char raw = text.charAt(i);
+            char c = fold(raw);
+            for(int l = 0; l < first.length; l++) {
+                if ((first[l] == c || first[l] == raw) && matchesAt(text, i, end, literals[l])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether the literal occurs at offset (ending before end) - the first character is assumed to match already
+     */
+    static boolean matchesAt(CharSequence text, int offset, int end, char[] literal) {
+        if (offset + literal.length > end) {
+            return false;
+        }
+        for(int i = 1; i < literal.length; i++) {
+            char raw = text.charAt(offset + i);
+            if (raw != literal[i] && fold(raw) != literal[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Unsupported extends Exception {
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Unsupported UNSUPPORTED = new Unsupported();
+
+    /**
+     * Literal factors of a part of the expression
+     */
+    private static final class Factors {
+
+        /**
+         * Matches the empty string only - ie. assertions like ^ and \b
+         */
+        static final Factors EMPTY = new Factors("", "", "", null, false);
+
+        /**
+         * Matches something unknown
+         */
+        static final Factors ANY = new Factors(null, "", "", null, false);
+
+        /**
+         * The string always matched - or null if it varies
+         */
+        final String exact;
+        final String prefix;
+        final String suffix;
+
+        /**
+         * Every match contains one of these - null if unknown
+         */
+        final List<String> required;
+
+        /**
+         * Whether every match starts with one of the required literals
+         */
+        final boolean requiredPrefix;
+
+        Factors(String exact, String prefix, String suffix, List<String> required, boolean requiredPrefix) {
+            if (exact != null && exact.length() > MAX_LENGTH) {
+                exact = null;
+            }
+            this.exact = exact;
+            this.prefix = head(prefix);
+            this.suffix = suffix.length() > MAX_LENGTH ? suffix.substring(suffix.length() - MAX_LENGTH) : suffix;
+            this.required = required;
+            this.requiredPrefix = required != null && requiredPrefix;
+        }
+
+        static Factors literal(char c) {
+            String literal = String.valueOf(fold(c));
+            return new Factors(literal, literal, literal, Collections.singletonList(literal), true);
+        }
+
+        private static String head(String literal) {
+            return literal.length() > MAX_LENGTH ? literal.substring(0, MAX_LENGTH) : literal;
+        }
+
+        /**
+         * Factors of this followed by next
+         */
+        Factors then(Factors next) {
+            String exact = this.exact != null && next.exact != null ? this.exact + next.exact : null;
+            String prefix = this.exact != null ? this.exact + next.prefix : this.prefix;
+            String suffix = next.exact != null ? this.suffix + next.exact : next.suffix;
+
+            Choice choice = new Choice(this.required, this.requiredPrefix);
+            choice.offer(next.required, next.requiredPrefix && "".equals(this.exact));
+            String joined = head(this.suffix + next.prefix);
+            if (!joined.isEmpty()) {
+                choice.offer(Collections.singletonList(joined), this.exact != null);
+            }
+            return new Factors(exact, prefix, suffix, choice.required, choice.prefix);
+        }
+
+        /**
+         * Factors of this or other
+         */
+        Factors or(Factors other) {
+            String exact = this.exact != null && this.exact.equals(other.exact) ? this.exact : null;
+            String prefix = commonPrefix(this.prefix, other.prefix);
+            String suffix = commonSuffix(this.suffix, other.suffix);
+
+            Choice choice = new Choice(null, false);
+            if (this.required != null && other.required != null) {
+                Set<String> union = new LinkedHashSet<String>(this.required);
+                union.addAll(other.required);
+                if (union.size() <= MAX_LITERALS) {
+                    choice.offer(new ArrayList<String>(union), this.requiredPrefix && other.requiredPrefix);
+                }
+            }
+            if (!prefix.isEmpty()) {
+                choice.offer(Collections.singletonList(prefix), true);
+            }
+            if (!suffix.isEmpty()) {
+                choice.offer(Collections.singletonList(suffix), false);
+            }
+            return new Factors(exact, prefix, suffix, choice.required, choice.prefix);
+        }
+
+        /**
+         * Factors of this repeated at least min and at most max (-1 for unlimited) times
+         */
+        Factors repeat(int min, int max) {
+            if (min == 0) {
+                return ANY;
+            }
+            if (exact != null && min == max) {
+                StringBuilder sb = new StringBuilder();
+                for(int i = 0; i < min && sb.length() <= MAX_LENGTH; i++) {
+                    sb.append(exact);
+                }
+                String repeated = sb.toString();
+                return new Factors(repeated, repeated, min * exact.length() > MAX_LENGTH ? suffix : repeated,
+                                   required, requiredPrefix);
+            }
+            return new Factors(null, prefix, suffix, required, requiredPrefix);
+        }
+
+        private static String commonPrefix(String a, String b) {
+            int i = 0;
+            while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return a.substring(0, i);
+        }
+
+        private static String commonSuffix(String a, String b) {
+            int i = 0;
+            while (i < a.length() && i < b.length()
+                    && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+                i++;
+            }
+            return a.substring(a.length() - i);
+        }
+    }
+
+    /**
+     * Picks the most selective set of required literals - the one with the longest shortest literal. Prefixes win ties
+     * since they allow skipping.
+     */
+    private static final class Choice {
+        private List<String> required;
+        private boolean prefix;
+
+        Choice(List<String> required, boolean prefix) {
+            this.required = required;
+            this.prefix = prefix;
+        }
+
+        void offer(List<String> candidate, boolean candidatePrefix) {
+            if (candidate == null) {
+                return;
+            }
+            if (required == null) {
+                required = candidate;
+                prefix = candidatePrefix;
+                return;
+            }
+            int length = minLength(candidate);
+            int current = minLength(required);
+            if (length > current
+                    || (length == current && candidatePrefix && !prefix)
+                    || (length == current && candidatePrefix == prefix && candidate.size() < required.size())) {
+                required = candidate;
+                prefix = candidatePrefix;
+            }
+        }
+
+        private static int minLength(List<String> literals) {
+            int min = Integer.MAX_VALUE;
+            for(String literal:literals) {
+                min = Math.min(min, literal.length());
+            }
+            return min;
+        }
+    }
+
+    /**
+     * Parses java.util.regex syntax into literal factors. Constructs that change how literals match (comments mode,
+     * canonical equivalence) or what a match is (\G) are rejected.
+     */
+    private static final class Parser {
+        private final String regex;
+        private int pos = 0;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Factors parse() throws Unsupported {
+            Factors out = parseAlternation();
+            if (pos < regex.length()) {
+                throw UNSUPPORTED;
+            }
+            return out;
+        }
+
+        private boolean more() {
+            return pos < regex.length();
+        }
+
+        private char peek() {
+            return regex.charAt(pos);
+        }
+
+        private Factors parseAlternation() throws Unsupported {
+            Factors out = parseSequence();
+            while (more() && peek() == '|') {
+                pos++;
+                out = out.or(parseSequence());
+            }
+            return out;
+        }
+
+        private Factors parseSequence() throws Unsupported {
+            Factors out = Factors.EMPTY;
+            while (more() && peek() != '|' && peek() != ')') {
+                if (regex.startsWith("\\Q", pos)) {
+                    out = out.then(parseQuoted());
+                    continue;
+                }
+                Factors atom = parseAtom();
+                if (atom == null) {
+                    continue;
+                }
+                out = out.then(parseQuantifier(atom));
+            }
+            return out;
+        }
+
+        private Factors parseQuoted() throws Unsupported {
+            pos += 2;
+            int end = regex.indexOf("\\E", pos);
+            int resume = end < 0 ? regex.length() : end + 2;
+            if (end < 0) {
+                end = regex.length();
+            }
+            if (pos == end) {
+                pos = resume;
+                return Factors.EMPTY;
+            }
+            Factors out = Factors.EMPTY;
+            while (pos < end) {
+                char c = regex.charAt(pos++);
+                Factors atom = Character.isSurrogate(c) ? Factors.ANY : Factors.literal(c);
+                if (pos == end) {
+                    //Quantifiers apply to the last quoted character
+                    pos = resume;
+                    atom = parseQuantifier(atom);
+                }
+                out = out.then(atom);
+            }
+            return out;
+        }
+
+        private Factors parseAtom() throws Unsupported {
+            char c = peek();
+            switch (c) {
+                case '(':
+                    return parseGroup();
+                case '[':
+                    pos = classEnd(pos);
+                    return Factors.ANY;
+                case '.':
+                    pos++;
+                    return Factors.ANY;
+                case '^':
+                case '$':
+                    pos++;
+                    return Factors.EMPTY;
+                case '\\':
+                    return parseEscape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw UNSUPPORTED;
+                default:
+                    pos++;
+                    if (Character.isSurrogate(c)) {
+                        return Factors.ANY;
+                    }
+                    return Factors.literal(c);
+            }
+        }
+
+        private Factors parseEscape() throws Unsupported {
+            pos++;
+            if (!more()) {
+                throw UNSUPPORTED;
+            }
+            char c = peek();
+            pos++;
+            switch (c) {
+                case 'A': case 'z': case 'Z': case 'B':
+                    return Factors.EMPTY;
+                case 'b':
+                    if (more() && peek() == '{') {
+                        skipPast('}');
+                    }
+                    return Factors.EMPTY;
+                case 'd': case 'D': case 'w': case 'W': case 's': case 'S':
+                case 'h': case 'H': case 'v': case 'V': case 'R': case 'X':
+                    return Factors.ANY;
+                case 't':
+                    return Factors.literal('\t');
+                case 'n':
+                    return Factors.literal('\n');
+                case 'r':
+                    return Factors.literal('\r');
+                case 'f':
+                    return Factors.literal('\f');
+                case 'a':
+                    return Factors.literal('\u0007');
+                case 'e':
+                    return Factors.literal('\u001B');
+                case '0':
+                    //Octal - up to 3 digits (only if the first is 0-3)
+                    int start = pos;
+                    for(int digits = 0; digits < 3 && more() && peek() >= '0' && peek() <= '7'; digits++) {
+                        if (digits == 2 && regex.charAt(pos - 2) > '3') {
+                            break;
+                        }
+                        pos++;
+                    }
+                    return codePoint(regex.substring(start, pos), 8);
+                case 'x':
+                    if (more() && peek() == '{') {
+                        int open = pos;
+                        skipPast('}');
+                        return codePoint(regex.substring(open + 1, pos - 1), 16);
+                    }
+                    pos += 2;
+                    return codePoint(regex.substring(pos - 2, Math.min(pos, regex.length())), 16);
+                case 'u':
+                    pos += 4;
+                    return codePoint(regex.substring(pos - 4, Math.min(pos, regex.length())), 16);
+                case 'c':
+                    if (!more()) {
+                        throw UNSUPPORTED;
+                    }
+                    return Factors.literal((char) (regex.charAt(pos++) ^ 64));
+                case 'p': case 'P': case 'N':
+                    if (more() && peek() == '{') {
+                        skipPast('}');
+                    } else {
+                        pos++;
+                    }
+                    return Factors.ANY;
+                case 'k':
+                    skipPast('>');
+                    return Factors.ANY;
+                default:
+                    if (c >= '1' && c <= '9') {
+                        //Back reference
+                        while (more() && peek() >= '0' && peek() <= '9') {
+                            pos++;
+                        }
+                        return Factors.ANY;
+                    }
+                    if (Character.isLetterOrDigit(c)) {
+                        //\G and anything unknown
+                        throw UNSUPPORTED;
+                    }
+                    if (Character.isSurrogate(c)) {
+                        return Factors.ANY;
+                    }
+                    return Factors.literal(c);
+            }
+        }
+
+        private Factors codePoint(String digits, int radix) throws Unsupported {
+            int cp;
+            try {
+                cp = digits.isEmpty() ? 0 : Integer.parseInt(digits, radix);
+            } catch (NumberFormatException ex) {
+                throw UNSUPPORTED;
+            }
+            if (cp > 0xFFFF || Character.isSurrogate((char) cp)) {
+                return Factors.ANY;
+            }
+            return Factors.literal((char) cp);
+        }
+
+        private void skipPast(char c) throws Unsupported {
+            int end = regex.indexOf(c, pos);
+            if (end < 0) {
+                throw UNSUPPORTED;
+            }
+            pos = end + 1;
+        }
+
+        private Factors parseGroup() throws Unsupported {
+            pos++;
+            boolean lookaround = false;
+            if (more() && peek() == '?') {
+                pos++;
+                if (!more()) {
+                    throw UNSUPPORTED;
+                }
+                char c = peek();
+                if (c == ':' || c == '>') {
+                    pos++;
+                } else if (c == '=' || c == '!') {
+                    pos++;
+                    lookaround = true;
+                } else if (c == '<') {
+                    pos++;
+                    if (more() && (peek() == '=' || peek() == '!')) {
+                        pos++;
+                        lookaround = true;
+                    } else {
+                        skipPast('>');
+                    }
+                } else {
+                    boolean on = true;
+                    while (more() && peek() != ')' && peek() != ':') {
+                        char flag = peek();
+                        if (flag == '-') {
+                            on = false;
+                        } else if (flag == 'c' || (flag == 'x' && on)) {
+                            //Comments and canonical equivalence change what literals match
+                            throw UNSUPPORTED;
+                        }
+                        pos++;
+                    }
+                    if (!more()) {
+                        throw UNSUPPORTED;
+                    }
+                    if (peek() == ')') {
+                        pos++;
+                        return null;
+                    }
+                    pos++;
+                }
+            }
+
+            Factors body = parseAlternation();
+            if (!more() || peek() != ')') {
+                throw UNSUPPORTED;
+            }
+            pos++;
+
+            if (lookaround) {
+                //Look arounds do not consume anything
+                return Factors.EMPTY;
+            }
+            return body;
+        }
+
+        private Factors parseQuantifier(Factors atom) throws Unsupported {
+            if (!more()) {
+                return atom;
+            }
+            int min;
+            int max;
+            switch (peek()) {
+                case '*':
+                    min = 0;
+                    max = -1;
+                    pos++;
+                    break;
+                case '+':
+                    min = 1;
+                    max = -1;
+                    pos++;
+                    break;
+                case '?':
+                    min = 0;
+                    max = 1;
+                    pos++;
+                    break;
+                case '{':
+                    int end = regex.indexOf('}', pos);
+                    if (end < 0) {
+                        throw UNSUPPORTED;
+                    }
+                    String[] parts = regex.substring(pos + 1, end).split(",", -1);
+                    try {
+                        min = Integer.parseInt(parts[0].trim());
+                        if (parts.length == 1) {
+                            max = min;
+                        } else if (parts[1].trim().isEmpty()) {
+                            max = -1;
+                        } else {
+                            max = Integer.parseInt(parts[1].trim());
+                        }
+                    } catch (NumberFormatException ex) {
+                        throw UNSUPPORTED;
+                    }
+                    pos = end + 1;
+                    break;
+                default:
+                    return atom;
+            }
+            if (more() && (peek() == '?' || peek() == '+')) {
+                //Lazy and possessive quantifiers match a subset of the same strings
+                pos++;
+            }
+            return atom.repeat(min, max);
+        }
+
+        /**
+         * Find the end (exclusive) of the character class starting at start
+         */
+        private int classEnd(int start) throws Unsupported {
+            int i = start;
+            int depth = 0;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    if (regex.startsWith("\\Q", i)) {
+                        int end = regex.indexOf("\\E", i + 2);
+                        if (end < 0) {
+                            throw UNSUPPORTED;
+                        }
+                        i = end + 2;
+                    } else {
+                        i += 2;
+                    }
+                } else if (c == '[') {
+                    depth++;
+                    i++;
+                    //A ] right after [ or [^ is a literal
+                    if (i < regex.length() && regex.charAt(i) == '^') {
+                        i++;
+                    }
+                    if (i < regex.length() && regex.charAt(i) == ']') {
+                        i++;
+                    }
+                } else if (c == ']') {
+                    depth--;
+                    i++;
+                    if (depth == 0) {
+                        return i;
+                    }
+                } else {
+                    i++;
+                }
+            }
+            throw UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Pattern that only runs the engine when the required literals occur in the text
+     */
+    static final class FilteredPattern extends EnginePattern {
+        private final EnginePattern pattern;
+        private final LiteralFilter filter;
+
+        FilteredPattern(EnginePattern pattern, LiteralFilter filter) {
+            this.pattern = pattern;
+            this.filter = filter;
+        }
+
+        @Override
+        public String pattern() {
+            return pattern.pattern();
+        }
+
+        @Override
+        public MatchEngine engine() {
+            return pattern.engine();
+        }
+
+        @Override
+        public EngineMatcher matcher(CharSequence text) {
+            return new FilteredMatcher(pattern.matcher(text), filter, text);
+        }
+    }
+
+    /**
+     * Matcher that looks for the required literals before searching. Where the next search starts is tracked just like
+     * the underlying matcher does - except after empty matches, where starting one character early is harmless.
+     *
+     * The occurrence found is remembered so the text is scanned for literals at most once per region.
+     */
+    static final class FilteredMatcher extends EngineMatcher {
+        private final EngineMatcher m;
+        private final LiteralFilter filter;
+        private CharSequence text;
+
+        /**
+         * The region
+         */
+        private int from;
+        private int to;
+
+        /**
+         * Where the next find starts searching
+         */
+        private int next;
+
+        /**
+         * The first occurrence at or after scanned - or -1 if there is none
+         */
+        private int scanned;
+        private int occurrence;
+
+        /**
+         * Whether the region of the underlying matcher differs from ours
+         */
+        private boolean moved = false;
+        private boolean rejected = false;
+
+        FilteredMatcher(EngineMatcher m, LiteralFilter filter, CharSequence text) {
+            this.m = m;
+            this.filter = filter;
+            this.text = text;
+            clear(0, text.length());
+        }
+
+        private void clear(int start, int end) {
+            from = start;
+            to = end;
+            next = start;
+            scanned = Integer.MAX_VALUE;
+            occurrence = -1;
+            moved = false;
+            rejected = false;
+        }
+
+        /**
+         * Get the first occurrence of the literals at or after start
+         */
+        private int occurrence(int start) {
+            if (start >= scanned && (occurrence < 0 || occurrence >= start)) {
+                return occurrence;
+            }
+            scanned = start;
+            occurrence = filter.indexOf(text, start, to);
+            return occurrence;
+        }
+
+        private boolean reject() {
+            rejected = true;
+            if (!moved) {
+                //Leave the underlying matcher without a match
+                m.region(to, to);
+                moved = true;
+            }
+            return false;
+        }
+
+        private boolean matched(boolean found) {
+            rejected = false;
+            if (found) {
+                next = m.end();
+            }
+            return found;
+        }
+
+        @Override
+        public boolean find() {
+            int start = next;
+            if (start > to) {
+                return matched(m.find());
+            }
+            int at = occurrence(start);
+            if (at < 0) {
+                return reject();
+            }
+            if (filter.prefix && at > start) {
+                m.region(at, to);
+                moved = true;
+            }
+            return matched(m.find());
+        }
+
+        @Override
+        public boolean find(int start) {
+            if (start < 0 || start > text.length()) {
+                return m.find(start);
+            }
+            clear(0, text.length());
+            int at = occurrence(start);
+            if (at < 0) {
+                return reject();
+            }
+            return matched(m.find(filter.prefix ? at : start));
+        }
+
+        @Override
+        public boolean lookingAt() {
+            if (moved) {
+                m.region(from, to);
+                moved = false;
+            }
+            int at = occurrence(from);
+            if (at < 0 || (filter.prefix && at > from)) {
+                return reject();
+            }
+            return matched(m.lookingAt());
+        }
+
+        @Override
+        public EngineMatcher region(int start, int end) {
+            m.region(start, end);
+            clear(start, end);
+            return this;
+        }
+
+        @Override
+        public EngineMatcher reset() {
+            m.reset();
+            clear(0, text.length());
+            return this;
+        }
+
+        @Override
+        public EngineMatcher reset(CharSequence text) {
+            m.reset(text);
+            this.text = text;
+            clear(0, text.length());
+            return this;
+        }
+
+        @Override
+        public boolean hitEnd() {
+            return rejected || m.hitEnd();
+        }
+
+        public int start(int group) {
+            return m.start(group);
+        }
+
+        public int end(int group) {
+            return m.end(group);
+        }
+
+        public String group(int group) {
+            return m.group(group);
+        }
+
+        public int groupCount() {
+            return m.groupCount();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.vonhof.matchit;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads and decodes a file through memory mapped regions - so files of any size can be read without copying them 
+ * through the heap.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class MappedFileReader extends Reader {
+    
+    private static final long REGION_SIZE = 64L * 1024 * 1024;
+    
+    /**
+     * Bytes left in a region before mapping the next one - so characters spanning regions are decoded whole.
+     */
+    private static final int REGION_OVERLAP = 16;
+    
+    private final FileChannel channel;
+    private final CharsetDecoder decoder;
+    private final long size;
+    
+    private ByteBuffer region;
+    private long regionOffset = 0;
+    private boolean flushed = false;
+
+    MappedFileReader(FileChannel channel, Charset charset) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.decoder = charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        map(0);
+    }
+    
+    private void map(long offset) throws IOException {
+        regionOffset = offset;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(REGION_SIZE, size - offset));
+    }
+    
+    private boolean isLastRegion() {
+        return regionOffset + region.limit() >= size;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (flushed) {
+            return -1;
+        }
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (out.position() == off) {
+            if (!isLastRegion() && region.remaining() < REGION_OVERLAP) {
+                map(regionOffset + region.position());
+            }
+            boolean last = isLastRegion();
+            CoderResult result = decoder.decode(region, out, last);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (last && !region.hasRemaining()) {
+                if (!flushed) {
+                    decoder.flush(out);
+                    flushed = true;
+                }
+                break;
+            }
+        }
+        int read = out.position() - off;
+        return read == 0 ? -1 : read;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+}
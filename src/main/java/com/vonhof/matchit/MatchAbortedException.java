@@ -0,0 +1,68 @@
+package com.vonhof.matchit;
+
+/**
+ * Thrown when a search exceeds its MatchBudget - or its thread is interrupted while searching with a budget. 
+ * 
+ * The matcher that threw is left in an undefined state and should not be used for further searches.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class MatchAbortedException extends ExpressionException {
+    
+    public static enum Reason {
+        /**
+         * The search read more characters than allowed
+         */
+        STEPS,
+        /**
+         * The search took longer than allowed
+         */
+        TIME,
+        /**
+         * The thread was interrupted
+         */
+        INTERRUPTED
+    }
+    
+    private final Reason reason;
+    private final int position;
+    private final long steps;
+    private final long elapsedNanos;
+
+    public MatchAbortedException(Reason reason, int position, long steps, long elapsedNanos) {
+        super(String.format("Search aborted (%s) at position %d after %d steps and %d ns", 
+                            reason, position, steps, elapsedNanos));
+        this.reason = reason;
+        this.position = position;
+        this.steps = steps;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * The position in the text that was being read when the search was aborted
+     * @return 
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * The amount of characters read by the search
+     * @return 
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * The time spent searching
+     * @return 
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
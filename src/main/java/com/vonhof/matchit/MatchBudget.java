@@ -0,0 +1,80 @@
+package com.vonhof.matchit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how much work a single search (find, find(offset) or lookingAt) of an ExpressionMatcher may do - counted in 
+ * character reads (steps) and/or wall clock time. Searches exceeding the budget (or whose thread is interrupted) are 
+ * aborted with a MatchAbortedException.
+ * 
+ * Usage:
+ * 
+ * ExpressionMatcher matcher = expr.matcher(text, MatchBudget.steps(1000000).withTime(50, TimeUnit.MILLISECONDS));
+ * 
+ * or for all matchers of a context: ctxt.setBudget(MatchBudget.time(50, TimeUnit.MILLISECONDS))
+ * 
+ * Budgets are immutable.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public final class MatchBudget {
+    
+    private final long maxSteps;
+    private final long maxNanos;
+
+    private MatchBudget(long maxSteps, long maxNanos) {
+        if (maxSteps < 1 || maxNanos < 1) {
+            throw new IllegalArgumentException("Budget must be positive");
+        }
+        this.maxSteps = maxSteps;
+        this.maxNanos = maxNanos;
+    }
+    
+    /**
+     * Budget of max character reads per search
+     * @param maxSteps
+     * @return 
+     */
+    public static MatchBudget steps(long maxSteps) {
+        return new MatchBudget(maxSteps, Long.MAX_VALUE);
+    }
+    
+    /**
+     * Budget of max time per search
+     * @param time
+     * @param unit
+     * @return 
+     */
+    public static MatchBudget time(long time, TimeUnit unit) {
+        return new MatchBudget(Long.MAX_VALUE, unit.toNanos(time));
+    }
+    
+    public MatchBudget withSteps(long maxSteps) {
+        return new MatchBudget(maxSteps, maxNanos);
+    }
+    
+    public MatchBudget withTime(long time, TimeUnit unit) {
+        return new MatchBudget(maxSteps, unit.toNanos(time));
+    }
+
+    /**
+     * Max character reads per search - Long.MAX_VALUE if unlimited
+     * @return 
+     */
+    public long maxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * Max time per search - Long.MAX_VALUE if unlimited
+     * @return 
+     */
+    public long maxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MatchBudget{steps=%d, nanos=%d}", maxSteps, maxNanos);
+    }
+}
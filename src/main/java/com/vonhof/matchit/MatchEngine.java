@@ -0,0 +1,58 @@
+package com.vonhof.matchit;
+
+import java.util.regex.Pattern;
+
+/**
+ * Compiles the (expanded) regular expression of an Expression into something that can match text. 
+ * 
+ * BACKTRACKING    - Uses java.util.regex.Pattern. Supports everything - but may take exponential time on some 
+ *                   expressions (nested quantifiers etc.) This is the default.
+ * 
+ * LINEAR          - Simulates all alternatives in parallel (a Pike VM) so matching time is linear in the length of 
+ *                   the input. Does not support back references, look arounds, possessive quantifiers, word 
+ *                   boundaries and multiline anchors. Compiling an unsupported expression fails with an 
+ *                   ExpressionException.
+ *                   Groups inside a repeat that is itself repeated are taken from the last iteration - which is not 
+ *                   always the case for BACKTRACKING (see LinearEngine).
+ * 
+ * AUTO            - Uses LINEAR for expressions that may take exponential time to backtrack (quantified parts that 
+ *                   can match in more than one way - ie. nested quantifiers) when it supports them - and 
+ *                   BACKTRACKING (which is faster on everything else) otherwise.
+ * 
+ * Set the engine to use for an expression context with ExpressionContext.setEngine.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public abstract class MatchEngine {
+    
+    public static final MatchEngine BACKTRACKING = new BacktrackingEngine();
+    public static final MatchEngine LINEAR = new LinearEngine();
+    public static final MatchEngine AUTO = new AutoEngine();
+    
+    /**
+     * Compile regular expression (java.util.regex syntax)
+     * @param regex
+     * @return 
+     * @throws java.util.regex.PatternSyntaxException if the expression is invalid
+     * @throws ExpressionException if the expression is not supported by this engine
+     */
+    public abstract EnginePattern compile(String regex);
+    
+    private static final class AutoEngine extends MatchEngine {
+
+        @Override
+        public EnginePattern compile(String regex) {
+            Pattern pattern = Pattern.compile(regex);
+            LinearProgram program = LinearProgram.compile(pattern);
+            if (program == null || !program.ambiguous) {
+                return new BacktrackingEngine.BacktrackingPattern(pattern);
+            }
+            return new LinearEngine.LinearPattern(regex, program);
+        }
+
+        @Override
+        public String toString() {
+            return "AUTO";
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.vonhof.matchit;
+
+/**
+ * The values of (a range of) the groups of a match - see ExpressionMatch.groups. Values are kept in an array by 
+ * index, names are looked up in the name table shared by all matches of the expression - so nothing is created per 
+ * group.
+ * 
+ * Iterate the named groups using namedCount, namedIndex, namedKey and namedValue:
+ * 
+ * MatchGroups groups = match.groups();
+ * for(int i = 0; i < groups.namedCount(); i++) {
+ *     json.field(groups.namedKey(i), groups.namedValue(i));
+ * }
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public final class MatchGroups {
+    
+    private final NameTable names;
+    private final String[] values;
+    
+    /**
+     * The index (in the match) of the first group
+     */
+    private final int start;
+    
+    /**
+     * The range of the named indices (of the name table) within the groups
+     */
+    private final int namedFrom;
+    private final int namedTo;
+
+    MatchGroups(NameTable names, String[] values, int start) {
+        this.names = names;
+        this.values = values;
+        this.start = start;
+        int limit = Math.min(start + values.length, names.length());
+        this.namedFrom = names.namedBefore(start);
+        this.namedTo = Math.max(namedFrom, names.namedBefore(limit));
+    }
+
+    /**
+     * The amount of groups
+     * @return 
+     */
+    public int size() {
+        return values.length;
+    }
+    
+    /**
+     * Get the value of group i - or null if it did not match anything
+     * @param i
+     * @return 
+     */
+    public String get(int i) {
+        return values[i];
+    }
+    
+    /**
+     * Get the value of the (first) group with name - or null if there is no such group or it did not match anything
+     * @param name
+     * @return 
+     */
+    public String get(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : values[i];
+    }
+    
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+    
+    /**
+     * Get the index of the first group with name - or -1 if not found
+     * @param name
+     * @return 
+     */
+    public int indexOf(String name) {
+        int i = names.indexOf(name);
+        if (i < 0) {
+            return -1;
+        }
+        if (i >= start && i < start + values.length) {
+            return i - start;
+        }
+        //The first group with the name is outside the range - look for another one within it
+        for(int n = namedFrom; n < namedTo; n++) {
+            int index = names.named(n);
+            if (name.equals(names.name(index))) {
+                return index - start;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Get the name of group i - or null if it has no name
+     * @param i
+     * @return 
+     */
+    public String name(int i) {
+        int index = start + i;
+        return index < names.length() ? names.name(index) : null;
+    }
+    
+    /**
+     * The amount of named groups
+     * @return 
+     */
+    public int namedCount() {
+        return namedTo - namedFrom;
+    }
+    
+    /**
+     * Get the index of the i'th named group
+     * @param i
+     * @return 
+     */
+    public int namedIndex(int i) {
+        return names.named(namedFrom + i) - start;
+    }
+    
+    /**
+     * Get the name of the i'th named group
+     * @param i
+     * @return 
+     */
+    public String namedKey(int i) {
+        return names.name(names.named(namedFrom + i));
+    }
+    
+    /**
+     * Get the value of the i'th named group
+     * @param i
+     * @return 
+     */
+    public String namedValue(int i) {
+        return values[namedIndex(i)];
+    }
+    
+    /**
+     * Copy the groups into a map of group names and group indices - as returned by ExpressionMatch.groups before.
+     * @return 
+     * @deprecated Use the groups directly
+     */
+    @Deprecated
+    public StringIntMap<String> toMap() {
+        StringIntMap<String> out = new StringIntMap<String>(values.length * 2);
+        for(int i = 0; i < values.length; i++) {
+            String name = name(i);
+            if (name != null) {
+                out.put(name, values[i]);
+            }
+            out.put(i, values[i]);
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for(int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(i);
+            String name = name(i);
+            if (name != null) {
+                sb.append('/').append(name);
+            }
+            sb.append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,336 @@
+package com.vonhof.matchit;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Matches many (small) texts against the expressions of a context by id - see submit and submitAll.
+ *
+ * Jobs are queued and matched by at most concurrency workers (defaults to the amount of processors) - so the
+ * executor is never oversubscribed no matter how many jobs are submitted. Each worker keeps matching jobs until the
+ * queue is empty and reuses its matchers for jobs of the same expression. Results are collected as
+ * ExpressionMatches.
+ *
+ * MatchingService service = new MatchingService(ctxt);
+ * CompletableFuture<ExpressionMatches> matches = service.submit("tenant1", document);
+ *
+ * By default workers run on virtual threads when the JVM supports them (Java 21+) - and on daemon threads
+ * otherwise. Use useExecutor to run them on another executor.
+ *
+ * Expressions are compiled once per id - and recompiled when anything is added to the context. The service is
+ * thread safe.
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class MatchingService implements AutoCloseable {
+
+    /**
+     * The maximum amount of matchers kept by each worker
+     */
+    private static final int MAX_WORKER_MATCHERS = 64;
+
+    private final ExpressionContext ctxt;
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<Task>();
+    private final AtomicInteger workers = new AtomicInteger();
+
+    /**
+     * Compiled expressions - replaced when the context is modified
+     */
+    private final AtomicReference<Compiled> compiled;
+
+    private volatile Executor executor;
+
+    /**
+     * The default executor - created when first used (and owned by this service)
+     */
+    private ExecutorService defaultExecutor;
+    private volatile int concurrency = Runtime.getRuntime().availableProcessors();
+
+    public MatchingService(ExpressionContext ctxt) {
+        this.ctxt = ctxt;
+        this.compiled = new AtomicReference<Compiled>(new Compiled(ctxt.modifications()));
+    }
+
+    /**
+     * Set the executor to run workers on. The executor is not shut down when closing the service.
+     * @param executor
+     * @return
+     */
+    public MatchingService useExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Set the maximum amount of jobs matched at the same time.
+     * @param concurrency
+     * @return
+     */
+    public MatchingService useConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive");
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Find all matches of the expression with id in text. Completes exceptionally with an ExpressionException if
+     * no expression has been added with id - or a MatchAbortedException if the budget of the context is exceeded.
+     * @param id
+     * @param text
+     * @return
+     */
+    public CompletableFuture<ExpressionMatches> submit(String id, CharSequence text) {
+        Task task = new Task(id, text);
+        tasks.offer(task);
+        spawn();
+        return task.result;
+    }
+
+    /**
+     * Find all matches of each job. Completes with the matches of the jobs (in order) when all are done - or
+     * exceptionally when any of them fails.
+     * @param jobs
+     * @return
+     */
+    public CompletableFuture<List<ExpressionMatches>> submitAll(Collection<Job> jobs) {
+        final List<CompletableFuture<ExpressionMatches>> results =
+                new ArrayList<CompletableFuture<ExpressionMatches>>(jobs.size());
+        for(Job job:jobs) {
+            Task task = new Task(job.id, job.text);
+            tasks.offer(task);
+            results.add(task.result);
+        }
+        for(int i = 0; i < Math.min(jobs.size(), concurrency); i++) {
+            spawn();
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(new Function<Void, List<ExpressionMatches>>() {
+                    public List<ExpressionMatches> apply(Void ignored) {
+                        List<ExpressionMatches> out = new ArrayList<ExpressionMatches>(results.size());
+                        for(CompletableFuture<ExpressionMatches> result:results) {
+                            out.add(result.join());
+                        }
+                        return out;
+                    }
+                });
+    }
+
+    /**
+     * Shut down the default executor (if used). Jobs already submitted are still matched.
+     */
+    public synchronized void close() {
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Start a worker - unless there are already enough
+     */
+    private void spawn() {
+        int current;
+        do {
+            current = workers.get();
+            if (current >= concurrency) {
+                return;
+            }
+        } while (!workers.compareAndSet(current, current + 1));
+
+        try {
+            executor().execute(new Worker());
+        } catch (RuntimeException ex) {
+            workers.decrementAndGet();
+            Task task;
+            while ((task = tasks.poll()) != null) {
+                task.result.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private Executor executor() {
+        Executor out = executor;
+        if (out != null) {
+            return out;
+        }
+        synchronized (this) {
+            if (defaultExecutor == null) {
+                defaultExecutor = createDefaultExecutor();
+            }
+            return defaultExecutor;
+        }
+    }
+
+    /**
+     * Create a virtual thread per task executor if available - or a daemon thread per worker otherwise (there are
+     * never more than concurrency workers)
+     */
+    private static ExecutorService createDefaultExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "matchit-worker-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the compiled expression with id
+     */
+    private Expression expression(String id) {
+        int current = ctxt.modifications();
+        Compiled compiled = this.compiled.get();
+        //Replace the expressions compiled before the last modification (unless another thread already did)
+        while (current - compiled.modification > 0) {
+            Compiled replacement = new Compiled(current);
+            compiled = this.compiled.compareAndSet(compiled, replacement) ? replacement : this.compiled.get();
+        }
+        ConcurrentMap<String, Expression> expressions = compiled.expressions;
+        Expression out = expressions.get(id);
+        if (out == null) {
+            if (ctxt.get(id) == null) {
+                throw new ExpressionException(String.format("Unknown expression: %s", id));
+            }
+            out = ctxt.compile("${" + id + "}").compile();
+            //Something was added while compiling - the expression might be stale so don't keep it around
+            if (ctxt.modifications() != compiled.modification) {
+                return out;
+            }
+            Expression existing = expressions.putIfAbsent(id, out);
+            if (existing != null) {
+                out = existing;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * A text to match against the expression with id
+     */
+    public static final class Job {
+        private final String id;
+        private final CharSequence text;
+
+        public Job(String id, CharSequence text) {
+            this.id = id;
+            this.text = text;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public CharSequence text() {
+            return text;
+        }
+    }
+
+    /**
+     * The expressions compiled since the context was modified
+     */
+    private static final class Compiled {
+        private final int modification;
+        private final ConcurrentMap<String, Expression> expressions = new ConcurrentHashMap<String, Expression>();
+
+        private Compiled(int modification) {
+            this.modification = modification;
+        }
+    }
+
+    private static final class Task {
+        private final String id;
+        private final CharSequence text;
+        private final CompletableFuture<ExpressionMatches> result = new CompletableFuture<ExpressionMatches>();
+
+        private Task(String id, CharSequence text) {
+            this.id = id;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Matches queued tasks until there are no more - reusing a matcher per expression
+     */
+    private final class Worker implements Runnable {
+
+        /**
+         * Matchers by expression id - replaced when the expression is recompiled
+         */
+        private final Map<String, ExpressionMatcher> matchers =
+                new LinkedHashMap<String, ExpressionMatcher>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, ExpressionMatcher> eldest) {
+                        return size() > MAX_WORKER_MATCHERS;
+                    }
+                };
+
+        public void run() {
+            try {
+                Task task;
+                while ((task = tasks.poll()) != null) {
+                    match(task);
+                }
+            } finally {
+                workers.decrementAndGet();
+
+                //A task may have been queued after polling but before stopping (or this worker failed) - start a 
+                //worker for it
+                if (!tasks.isEmpty()) {
+                    spawn();
+                }
+            }
+        }
+
+        private void match(Task task) {
+            if (task.result.isDone()) {
+                return;
+            }
+            try {
+                Expression expression = expression(task.id);
+                ExpressionMatcher matcher = matchers.get(task.id);
+                if (matcher == null || matcher.expression != expression) {
+                    matcher = expression.matcher(task.text).useLazyGroups(true);
+                    matchers.put(task.id, matcher);
+                } else {
+                    matcher.reset(task.text);
+                }
+
+                ExpressionMatches out = new ExpressionMatches(expression, task.text);
+                while (matcher.find()) {
+                    out.add(matcher);
+                }
+                task.result.complete(out);
+            } catch (Throwable ex) {
+                //Errors (ie. stack overflows in the backtracking engine) fail the task - not the worker
+                matchers.remove(task.id);
+                task.result.completeExceptionally(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.vonhof.matchit;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Immutable table of names by group index - with a precomputed name to index hash so named lookups are constant 
+ * time. Built once when an expression is compiled and shared by all matches of that expression.
+ * 
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class NameTable {
+    
+    static final NameTable EMPTY = new NameTable(new String[0]);
+    
+    /**
+     * Names by index - null for indices without a name.
+     */
+    private final String[] names;
+    
+    /**
+     * Open addressing hash table of names (keys) and the first index they appear at (indices).
+     */
+    private final String[] keys;
+    private final int[] indices;
+    private final int mask;
+    
+    /**
+     * The indices with a name - in ascending order.
+     */
+    private final int[] named;
+
+    NameTable(String[] names) {
+        this.names = names;
+        
+        int found = 0;
+        for(String name:names) {
+            if (name != null) {
+                found++;
+            }
+        }
+        this.named = new int[found];
+        found = 0;
+        for(int i = 0; i < names.length; i++) {
+            if (names[i] != null) {
+                named[found++] = i;
+            }
+        }
+        
+        int size = 2;
+        while (size < found * 2) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.keys = new String[size];
+        this.indices = new int[size];
+        
+        for(int i = 0; i < names.length; i++) {
+            String name = names[i];
+            if (name == null) {
+                continue;
+            }
+            int slot = name.hashCode() & mask;
+            while (keys[slot] != null && !keys[slot].equals(name)) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == null) {
+                keys[slot] = name;
+                indices[slot] = i;
+            }
+        }
+    }
+    
+    /**
+     * Create table from map of index => name
+     * @param map
+     * @param size
+     * @return 
+     */
+    static NameTable from(Map<Integer,String> map, int size) {
+        String[] names = new String[size];
+        for(Entry<Integer,String> entry:map.entrySet()) {
+            if (entry.getKey() < size) {
+                names[entry.getKey()] = entry.getValue();
+            }
+        }
+        return new NameTable(names);
+    }
+
+    /**
+     * Get the first index with the given name - or -1 if not found.
+     * @param name
+     * @return 
+     */
+    int indexOf(String name) {
+        if (name == null || named.length == 0) {
+            return -1;
+        }
+        int slot = name.hashCode() & mask;
+        while (keys[slot] != null) {
+            if (keys[slot].equals(name)) {
+                return indices[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    String name(int i) {
+        return names[i];
+    }
+    
+    int length() {
+        return names.length;
+    }
+    
+    int count() {
+        return named.length;
+    }
+    
+    /**
+     * Get the index of the i'th index with a name
+     * @param i
+     * @return 
+     */
+    int named(int i) {
+        return named[i];
+    }
+    
+    /**
+     * Get the amount of indices with a name before index
+     * @param index
+     * @return 
+     */
+    int namedBefore(int index) {
+        int low = 0;
+        int high = named.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (named[middle] < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Copy of the names by index
+     * @return 
+     */
+    String[] toArray() {
+        return names.clone();
+    }
+}
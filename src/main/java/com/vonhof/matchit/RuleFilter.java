@@ -0,0 +1,119 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The required literals of all the rules of an expression set - used to find the rules that may match a text in a
+ * single scan, so only those are matched. See LiteralFilter.
+ *
+ * Literals are looked up by their first (case folded) character - so each character of the text is only compared to
+ * the literals starting with (about) the same character, no matter how many rules there are. Rules without required
+ * literals may always match.
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+final class RuleFilter {
+
+    private static final int BUCKETS = 256;
+
+    /**
+     * The literals (case folded) of all rules - and the rule of each
+     */
+    private final char[][] literals;
+    private final int[] literalRules;
+
+    /**
+     * Literal indexes by first character (modulo BUCKETS) - null if no literal starts with such a character
+     */
+    private final int[][] buckets = new int[BUCKETS][];
+
+    /**
+     * Rules without required literals
+     */
+    private final boolean[] unfiltered;
+    private final int filteredCount;
+
+    /**
+     * Create a filter for the rules with filters - null for rules without required literals.
+     * @param filters
+     */
+    RuleFilter(List<LiteralFilter> filters) {
+        int ruleCount = filters.size();
+        this.unfiltered = new boolean[ruleCount];
+
+        List<char[]> all = new ArrayList<char[]>();
+        List<Integer> rules = new ArrayList<Integer>();
+        int filtered = 0;
+        for(int rule = 0; rule < ruleCount; rule++) {
+            LiteralFilter filter = filters.get(rule);
+            if (filter == null) {
+                unfiltered[rule] = true;
+                continue;
+            }
+            filtered++;
+            for(String literal:filter.literals()) {
+                all.add(literal.toCharArray());
+                rules.add(rule);
+            }
+        }
+        this.filteredCount = filtered;
+        this.literals = all.toArray(new char[0][]);
+        this.literalRules = new int[literals.length];
+
+        int[] sizes = new int[BUCKETS];
+        for(int i = 0; i < literals.length; i++) {
+            literalRules[i] = rules.get(i);
+            sizes[literals[i][0] % BUCKETS]++;
+        }
+        for(int i = 0; i < literals.length; i++) {
+            int bucket = literals[i][0] % BUCKETS;
+            if (buckets[bucket] == null) {
+                buckets[bucket] = new int[sizes[bucket]];
+                sizes[bucket] = 0;
+            }
+            buckets[bucket][sizes[bucket]++] = i;
+        }
+    }
+
+    /**
+     * Get whether each rule may match the text - by rule index.
+     * @param text
+     * @return
+     */
+    boolean[] candidates(CharSequence text) {
+        boolean[] out = unfiltered.clone();
+        int remaining = filteredCount;
+        int length = text.length();
+        for(int i = 0; i < length && remaining > 0; i++) {
+            char raw = text.charAt(i);
+            char c = LiteralFilter.fold(raw);
+            remaining -= mark(text, i, c, raw, out);
+            if (raw != c && raw % BUCKETS != c % BUCKETS) {
+                remaining -= mark(text, i, raw, raw, out);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Mark the rules of the literals starting with c (or raw) at offset - returns the amount of rules marked
+     */
+    private int mark(CharSequence text, int offset, char c, char raw, boolean[] out) {
+        int[] bucket = buckets[c % BUCKETS];
+        if (bucket == null) {
+            return 0;
+        }
+        int marked = 0;
+        for(int l:bucket) {
+            int rule = literalRules[l];
+            char first = literals[l][0];
+            if (!out[rule] && (first == c || first == raw)
+                    && LiteralFilter.matchesAt(text, offset, text.length(), literals[l])) {
+                out[rule] = true;
+                marked++;
+            }
+        }
+        return marked;
+    }
+}
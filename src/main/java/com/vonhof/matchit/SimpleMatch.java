@@ -1,7 +1,5 @@
 package com.vonhof.matchit;
 
-import com.vonhof.matchit.StringIntMap;
-
 /**
  *
  * @author Henrik Hofmeister <@vonhofdk>
@@ -3,9 +3,11 @@ package com.vonhof.matchit;
 import java.util.HashMap;
 
 /**
- *
+ * 
  * @author Henrik Hofmeister <@vonhofdk>
+ * @deprecated Boxes every index - ExpressionMatch.groups returns MatchGroups instead
  */
+@Deprecated
 public class StringIntMap<T> extends HashMap<Object,T> {
 
     public StringIntMap(int size) {
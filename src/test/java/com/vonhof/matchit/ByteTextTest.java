@@ -0,0 +1,134 @@
+package com.vonhof.matchit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ByteTextTest extends TestCase {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    public ByteTextTest(String testName) {
+        super(testName);
+    }
+
+    private Expression expression() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("word","(?<WORD>\\p{L}+)");
+        return ctxt.compile("${word}=(?<VALUE>\\S+)");
+    }
+
+    public void test_can_match_latin1_bytes() {
+        byte[] bytes = "xx name=Søren age=42 xx".getBytes(LATIN1);
+        ByteText text = ByteText.latin1(bytes, 3, bytes.length - 6);
+        assertEquals("name=Søren age=42", text.toString());
+
+        ExpressionMatcher matcher = expression().matcher(text);
+        assertTrue(matcher.find());
+        assertEquals("name", matcher.group("WORD"));
+        assertEquals("Søren", matcher.group("VALUE"));
+        assertEquals(8, text.byteOffset(matcher.start("VALUE")));
+        assertEquals(13, text.byteOffset(matcher.end("VALUE")));
+        assertTrue(matcher.find());
+        assertEquals("42", matcher.group("VALUE"));
+        assertEquals(bytes.length - 3, text.byteOffset(matcher.end()));
+        assertFalse(matcher.find());
+    }
+
+    public void test_can_match_utf8_bytes() {
+        String string = "navn=Søren by=東京 emoji=😀! ";
+        byte[] bytes = string.getBytes(UTF8);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+
+        for(ByteText text:new ByteText[] {ByteText.utf8(bytes), ByteText.utf8(direct)}) {
+            assertEquals(string, text.toString());
+
+            ExpressionMatcher matcher = expression().matcher(text);
+            ExpressionMatcher expected = expression().matcher(string);
+            while (expected.find()) {
+                assertTrue(matcher.find());
+                assertEquals(expected.group("VALUE"), matcher.group("VALUE"));
+
+                int start = text.byteOffset(matcher.start("VALUE"));
+                int end = text.byteOffset(matcher.end("VALUE"));
+                assertEquals(matcher.group("VALUE"), new String(bytes, start, end - start, UTF8));
+            }
+            assertFalse(matcher.find());
+        }
+        assertEquals(0, direct.position());
+    }
+
+    public void test_can_read_random_utf8() {
+        Random random = new Random(42);
+        String chars = "aZ9 æøå東京😀é";
+        for(int i = 0; i < 50; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(200);
+            while (sb.length() < length) {
+                int index = random.nextInt(chars.length());
+                if (Character.isSurrogate(chars.charAt(index))) {
+                    sb.append("😀");
+                } else {
+                    sb.append(chars.charAt(index));
+                }
+            }
+            String string = sb.toString();
+            ByteText text = ByteText.utf8(string.getBytes(UTF8));
+            assertEquals(string.length(), text.length());
+
+            //Read backwards and at random to exercise the checkpoints
+            for(int c = string.length() - 1; c >= 0; c--) {
+                assertEquals(string.charAt(c), text.charAt(c));
+            }
+            for(int c = 0; c < 100 && string.length() > 0; c++) {
+                int index = random.nextInt(string.length());
+                assertEquals(string.charAt(index), text.charAt(index));
+                if (!Character.isLowSurrogate(string.charAt(index))) {
+                    assertEquals(string.substring(0, index).getBytes(UTF8).length, text.byteOffset(index));
+                }
+            }
+        }
+    }
+
+    public void test_can_scan_utf8_in_parallel() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 20000; i++) {
+            sb.append(i % 3 == 0 ? "by=東京" : "navn=Søren").append(i).append(i % 7 == 0 ? " 😀 " : " ");
+        }
+        String string = sb.toString();
+        List<ExpressionMatch> expected = expression().parallelFind(string);
+        assertEquals(20000, expected.size());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ExpressionScanner scanner = expression().scanner().usePool(pool).useSegmentSize(500);
+            for(int run = 0; run < 5; run++) {
+                ByteText text = ByteText.utf8(string.getBytes(UTF8));
+                List<ExpressionMatch> actual = scanner.scan(text);
+                assertEquals(expected.size(), actual.size());
+                for(int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).start(), actual.get(i).start());
+                    assertEquals(expected.get(i).group("VALUE"), actual.get(i).group("VALUE"));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void test_can_read_malformed_utf8() {
+        byte[] bytes = {'a', (byte) 0xFF, 'b', (byte) 0xC3, 'c', (byte) 0xE6};
+        assertEquals(new String(bytes, UTF8), ByteText.utf8(bytes).toString());
+    }
+}
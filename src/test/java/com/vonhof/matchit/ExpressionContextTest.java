@@ -1,5 +1,11 @@
 package com.vonhof.matchit;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import junit.framework.TestCase;
 
 /**
@@ -30,7 +36,7 @@ public class ExpressionContextTest extends TestCase {
         
         String pattern = ctxt.compile("${letters}_${numbers}_${range(9,12,2)}").pattern();
         
-        assertEquals("(?uis)([A-Z]+)_([0-9]+)_(?:09|10|11|12)", pattern);
+        assertEquals("(?uis)([A-Z]+)_([0-9]+)_(?:09|1[0-2])", pattern);
     }
     
     public void test_can_match_groups() {
@@ -110,4 +116,258 @@ public class ExpressionContextTest extends TestCase {
         assertEquals("ABCD", matcher.group("ABCDNAME"));
         assertEquals("AB", abcdGroups.group("ABNAME"));
     }
+    
+    public void test_can_share_expression_between_threads() throws Exception {
+        final ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("a","(?<ANAME>A)");
+        ctxt.add("a","(?<ANAME>a)");
+        ctxt.add("numbers","[0-9]+");
+        ctxt.add("ab","${a}(?<NUM>${numbers})");
+        
+        final Expression expr = ctxt.compile("x ${ab} y");
+        
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for(int i = 0; i < 64; i++) {
+                final String num = String.valueOf(i);
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        ExpressionMatcher matcher = expr.matcher("x a" + num + " y");
+                        assertTrue(matcher.find());
+                        return matcher.subMatch("ab").group("NUM");
+                    }
+                }));
+            }
+            for(int i = 0; i < results.size(); i++) {
+                assertEquals(String.valueOf(i), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        
+        assertEquals(1, expr.getSubExpressions().size());
+        try {
+            expr.getSubExpressions().clear();
+            fail("Compiled expression must be read-only");
+        } catch (UnsupportedOperationException ex) {
+            //Expected
+        }
+    }
+    
+    public void test_can_match_with_lazy_groups() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("a","(?<ANAME>A)");
+        ctxt.add("b","(?<BNAME>B)");
+        ctxt.add("ab","(?<ABNAME>${a}${b})");
+        
+        Expression expr = ctxt.compile("(?<NUM>[0-9]+) ${ab}");
+        ExpressionMatcher matcher = expr.matcher("1 AB and 22 AB").useLazyGroups(true);
+        assertTrue(matcher.hasLazyGroups());
+        
+        assertTrue(matcher.find());
+        assertEquals("1", matcher.group("NUM"));
+        assertEquals("1 AB", matcher.group());
+        assertEquals(2, matcher.start("ABNAME"));
+        assertEquals("B", matcher.subMatch("ab").group("BNAME"));
+        
+        assertTrue(matcher.find());
+        assertEquals("22", matcher.group("NUM"));
+        assertEquals(9, matcher.start());
+        assertEquals(14, matcher.end());
+        assertEquals(expr.groupCount, matcher.groupCount());
+        assertNull(matcher.group(expr.groupCount));
+        
+        assertFalse(matcher.find());
+    }
+    
+    public void test_can_lookup_group_names() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("word","(?<WORD>[a-z]+)");
+        
+        Expression expr = ctxt.compile("(?<FIRST>${word}) (?<SECOND>${word}) (?<FIRST>[0-9]+)");
+        ExpressionMatcher matcher = expr.matcher("hello world 42");
+        assertTrue(matcher.find());
+        
+        assertEquals(1, matcher.groupIndex("FIRST"));
+        assertEquals("hello", matcher.group("FIRST"));
+        assertEquals("hello", matcher.group("WORD"));
+        assertEquals("world", matcher.group("SECOND"));
+        assertEquals(-1, matcher.groupIndex("MISSING"));
+        assertNull(matcher.group("MISSING"));
+        assertEquals(5, matcher.namedGroupCount());
+        assertEquals(2, matcher.subExpressionCount());
+        
+        ExpressionMatch sub = matcher.subMatch("word");
+        assertSame(sub.groupNames, matcher.subMatch("word").groupNames);
+    }
+    
+    public void test_can_reuse_subexpression_fragments() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("a","(?<AA>a+)");
+        ctxt.add("ab","${a}(?<BB>b+)");
+        
+        Expression first = ctxt.compile("${ab}-${a}").compile();
+        Expression second = ctxt.compile("x${ab}").compile();
+        
+        assertSame(ctxt.reference("ab"), second.fragment.references.get("ab"));
+        assertSame(first.fragment.references.get("ab"), second.fragment.references.get("ab"));
+        assertEquals("(?uis)(((a+))(b+))-((a+))", first.pattern());
+        
+        ExpressionMatcher matcher = second.matcher("xaabb");
+        assertTrue(matcher.find());
+        assertEquals("aa", matcher.group("AA"));
+        assertEquals("bb", matcher.subMatch("ab").group("BB"));
+        assertEquals("aa", matcher.subMatch("ab").subMatch("a").group("AA"));
+    }
+    
+    public void test_can_invalidate_subexpressions_when_redefined() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("range",new ExpressionFunction.Range());
+        ctxt.add("a","(?<AA>a)");
+        ctxt.add("ab","${a}(?<BB>b)");
+        ctxt.add("num","${range(1,3)}");
+        ctxt.add("other","x");
+        
+        Expression before = ctxt.compile("${ab}${num}").compile();
+        Fragment.Reference other = ctxt.reference("other");
+        
+        ctxt.add("a","(?<CC>c)");
+        
+        assertSame(other, ctxt.reference("other"));
+        
+        Expression after = ctxt.compile("${ab}${num}");
+        ExpressionMatcher matcher = after.matcher("cb2");
+        assertTrue(matcher.find());
+        assertEquals("c", matcher.group("CC"));
+        assertEquals("c", matcher.subMatch("ab").subMatch("a").group("CC"));
+        assertNull(matcher.subMatch("ab").subMatch("a").group("AA"));
+        
+        //Expressions compiled before are not affected
+        assertFalse(before.matcher("cb2").find());
+        assertTrue(before.matcher("ab2").find());
+        
+        ctxt.add("range",new ExpressionFunction() {
+            public String execute(String[] args) {
+                return "#";
+            }
+        });
+        
+        assertTrue(ctxt.compile("${num}").matcher("#").find());
+        assertFalse(ctxt.compile("${num}").matcher("2").find());
+        assertSame(other, ctxt.reference("other"));
+    }
+    
+    public void test_can_keep_definitions_in_order() {
+        ExpressionContext ctxt = new ExpressionContext();
+        for(int i = 0; i < 20; i++) {
+            ctxt.add("num","n" + i);
+        }
+        StringBuilder sb = new StringBuilder("(?uis)(");
+        for(int i = 0; i < 20; i++) {
+            sb.append(i > 0 ? "|" : "").append("(n").append(i).append(")");
+        }
+        sb.append(")");
+        assertEquals(sb.toString(), ctxt.compile("${num}").pattern());
+    }
+    
+    public void test_can_factor_definition_prefixes() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("id","user=(?<UU>\\w+)");
+        ctxt.add("id","user:(?<VV>\\w+)");
+        ctxt.add("id","host=(?<HH>\\w+)");
+        ctxt.add("id","user=[0-9]+");
+        
+        Expression plain = ctxt.compile("${id}");
+        assertEquals("(?uis)((user=(\\w+))|(user:(\\w+))|(host=(\\w+))|(user=[0-9]+))", plain.pattern());
+        ctxt.setFactoring(true);
+        Expression factored = ctxt.compile("${id}");
+        assertEquals("(?uis)(user(?:(=(\\w+))|(:(\\w+)))|(host=(\\w+))|(user=[0-9]+))", factored.pattern());
+        
+        String[] inputs = {"x USER:bob", "host=a user=b", "user=1", "user-2 user:"};
+        for(String input:inputs) {
+            ExpressionMatcher expected = plain.matcher(input);
+            ExpressionMatcher actual = factored.matcher(input);
+            while (expected.find()) {
+                assertTrue(input, actual.find());
+                assertEquals(expected.group(), actual.group());
+                assertEquals(expected.subMatch("id").group(), actual.subMatch("id").group());
+                assertEquals(expected.subMatch("id").start(), actual.subMatch("id").start());
+                for(String name:new String[] {"UU", "VV", "HH"}) {
+                    assertEquals(expected.group(name), actual.group(name));
+                    assertEquals(expected.subMatch("id").group(name), actual.subMatch("id").group(name));
+                }
+            }
+            assertFalse(actual.find());
+        }
+        
+        ExpressionMatcher matcher = factored.matcher("x USER:bob");
+        assertTrue(matcher.find());
+        assertEquals("bob", matcher.subMatch("id").group("VV"));
+    }
+    
+    public void test_can_view_nested_sub_matches() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("num","(?<NUM>[0-9]+)");
+        ctxt.add("pair","${num}:${num}");
+        ctxt.add("pair","(?<WORD>[a-z]+)");
+        
+        ExpressionMatcher matcher = ctxt.compile("(?<ALL>${pair}) ${pair}").matcher("12:34 ab 5:6 7:8");
+        assertTrue(matcher.find());
+        ExpressionMatch pair = matcher.subMatch("pair");
+        ExpressionMatch num = pair.subMatch("num");
+        assertEquals("12:34", pair.group());
+        assertEquals("12", num.group("NUM"));
+        assertEquals(0, num.start());
+        assertEquals(2, num.end(1));
+        assertEquals(2, num.groupCount());
+        assertNull(num.group(2));
+        
+        ExpressionMatch kept = num.toMatchResult();
+        
+        //Views follow the matcher - copies do not
+        assertTrue(matcher.find());
+        assertEquals("5:6", pair.group());
+        assertEquals("5", num.group("NUM"));
+        assertEquals(9, num.start("NUM"));
+        assertEquals("12", kept.group("NUM"));
+        assertEquals("5", matcher.subMatch("pair").subMatch("num").group());
+    }
+    
+    public void test_can_read_groups() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("a","(?<ANAME>A)");
+        ctxt.add("b","(?<BNAME>B)(?<OTHER>X)?");
+        ctxt.add("ab","(?<ABNAME>${a}${b})");
+        
+        Expression expr = ctxt.compile("(?<FIRST>do) ${ab} (?<LAST>it)");
+        ExpressionMatcher matcher = expr.matcher("do AB it");
+        assertTrue(matcher.find());
+        
+        MatchGroups groups = matcher.groups();
+        assertEquals(matcher.groupCount(), groups.size());
+        assertEquals("do AB it", groups.get(0));
+        assertEquals("AB", groups.get("ABNAME"));
+        assertEquals("B", groups.get("BNAME"));
+        assertNull(groups.get("OTHER"));
+        assertTrue(groups.contains("OTHER"));
+        assertFalse(groups.contains("NOPE"));
+        assertEquals("FIRST", groups.name(1));
+        
+        StringBuilder named = new StringBuilder();
+        for(int i = 0; i < groups.namedCount(); i++) {
+            assertEquals(groups.get(groups.namedIndex(i)), groups.namedValue(i));
+            named.append(groups.namedKey(i)).append('=').append(groups.namedValue(i)).append(' ');
+        }
+        assertEquals("FIRST=do ABNAME=AB ANAME=A BNAME=B OTHER=null LAST=it ", named.toString());
+        
+        //A range is indexed from its start
+        int start = matcher.groupIndex("ABNAME");
+        MatchGroups range = matcher.groups(start, matcher.groupIndex("LAST"));
+        assertEquals("AB", range.get(0));
+        assertEquals(0, range.indexOf("ABNAME"));
+        assertEquals(-1, range.indexOf("FIRST"));
+        assertEquals(4, range.namedCount());
+        assertEquals("ANAME", range.namedKey(1));
+    }
 }
@@ -0,0 +1,154 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionFunctionTest extends TestCase {
+    
+    public ExpressionFunctionTest(String testName) {
+        super(testName);
+    }
+    
+    public void test_range_uses_digit_classes() {
+        ExpressionFunction range = new ExpressionFunction.Range();
+        
+        assertEquals("(?:1[0-9]{2}|2[0-4][0-9])", range.execute(new String[]{"100", "249"}));
+        assertEquals("(?:09|1[0-2])", range.execute(new String[]{"9", "12", "2"}));
+        assertEquals("(?:[0-9]{3})", range.execute(new String[]{"0", "999", "3"}));
+        assertEquals("(?:[0-9]|[1-9][0-9]|[1-9][0-9]{2}|[1-9][0-9]{3}|[1-9][0-9]{4}|[1-9][0-9]{5})", 
+                range.execute(new String[]{"0", "999999"}));
+    }
+    
+    public void test_range_matches_exactly_the_range() {
+        assertRange(0, 0, 1);
+        assertRange(0, 9, 1);
+        assertRange(7, 123, 1);
+        assertRange(9, 12, 2);
+        assertRange(5, 1234, 3);
+        assertRange(1900, 2100, 1);
+        assertRange(-25, 17, 1);
+        assertRange(-120, -15, 2);
+    }
+    
+    public void test_range_rejects_invalid_arguments() {
+        ExpressionFunction range = new ExpressionFunction.Range();
+        try {
+            range.execute(new String[]{"1"});
+            fail("Expected exception");
+        } catch (ExpressionException ex) {
+            //Expected
+        }
+        try {
+            range.execute(new String[]{"10", "1"});
+            fail("Expected exception");
+        } catch (ExpressionException ex) {
+            //Expected
+        }
+    }
+    
+    public void test_dictionary_factors_common_prefixes() {
+        ExpressionFunction.Dictionary dictionary = new ExpressionFunction.Dictionary();
+        dictionary.add("words", "abc", "abd", "x", "ab", "new york", "new", "a.b");
+        
+        assertEquals("(?-i:a(?:\\.b|b[cd]?)|new(?:\\x{20}york)?|x)", dictionary.execute(new String[]{"words"}));
+        assertEquals("(?-i:(?!))", dictionary.add("empty").execute(new String[]{" empty "}));
+        
+        try {
+            dictionary.execute(new String[]{"missing"});
+            fail("Expected exception");
+        } catch (ExpressionException ex) {
+            //Expected
+        }
+    }
+    
+    public void test_dictionary_matches_longest_word() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("oneOf", new ExpressionFunction.Dictionary().add("cities", "New", "New York", "York"));
+        
+        ExpressionMatcher matcher = ctxt.compile("(?<CITY>${oneOf(cities)})").matcher("to New York and York or new york");
+        assertTrue(matcher.find());
+        assertEquals("New York", matcher.group("CITY"));
+        assertTrue(matcher.find());
+        assertEquals("York", matcher.group("CITY"));
+        assertFalse(matcher.find());
+    }
+    
+    public void test_dictionary_matches_longest_word_of_mixed_case() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("exact", new ExpressionFunction.Dictionary().add("words", "AB", "abc"));
+        ctxt.add("folded", new ExpressionFunction.Dictionary(true).add("words", "AB", "abc"));
+        
+        for(String function : new String[]{"exact", "folded"}) {
+            ExpressionMatcher matcher = ctxt.compile("${" + function + "(words)}").matcher("abc ABx");
+            assertTrue(function, matcher.find());
+            assertEquals(function, "abc", matcher.group());
+            assertTrue(function, matcher.find());
+            assertEquals(function, "AB", matcher.group());
+        }
+        
+        ExpressionMatcher matcher = ctxt.compile("${exact(words)}").matcher("ABC ab");
+        assertTrue(matcher.find());
+        assertEquals("AB", matcher.group());
+        assertFalse(matcher.find());
+    }
+    
+    public void test_dictionary_can_fold_case() {
+        ExpressionFunction.Dictionary dictionary = new ExpressionFunction.Dictionary(true);
+        dictionary.add("words", "ABC", "abc", "AbD");
+        assertEquals("(?iu:ab[cd])", dictionary.execute(new String[]{"words"}));
+        assertTrue(Pattern.compile(dictionary.execute(new String[]{"words"})).matcher("aBd").matches());
+    }
+    
+    public void test_dictionary_matches_large_word_lists() {
+        Random random = new Random(42);
+        List<String> words = new ArrayList<String>();
+        for(int i = 0; i < 50000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 3 + random.nextInt(8);
+            for(int c = 0; c < length; c++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(sb.toString());
+        }
+        
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("oneOf", new ExpressionFunction.Dictionary().add("words", words));
+        Expression expr = ctxt.compile("^${oneOf(words)}$").compile();
+        
+        for(int i = 0; i < words.size(); i += 997) {
+            assertTrue(words.get(i), expr.matcher(words.get(i)).find());
+            assertFalse(words.get(i), expr.matcher(words.get(i) + "1").find());
+        }
+    }
+    
+    private void assertRange(int from, int to, int width) {
+        String regex = new ExpressionFunction.Range().execute(new String[]{
+            String.valueOf(from), String.valueOf(to), String.valueOf(width)});
+        Pattern pattern = Pattern.compile(regex);
+        
+        for(int i = from - 50; i <= to + 50; i++) {
+            String num = pad(i, width);
+            boolean inRange = i >= from && i <= to;
+            assertEquals(num + " vs " + regex, inRange, pattern.matcher(num).matches());
+        }
+        //Non-padded numbers must not match when a width is given
+        if (width > 1 && from >= 0 && from < 10) {
+            assertFalse(pattern.matcher(String.valueOf(from)).matches());
+        }
+    }
+    
+    private String pad(int num, int width) {
+        String digits = String.valueOf(Math.abs(num));
+        while (digits.length() < width) {
+            digits = "0" + digits;
+        }
+        return num < 0 ? "-" + digits : digits;
+    }
+}
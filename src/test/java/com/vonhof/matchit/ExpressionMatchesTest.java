@@ -0,0 +1,62 @@
+package com.vonhof.matchit;
+
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionMatchesTest extends TestCase {
+    
+    public ExpressionMatchesTest(String testName) {
+        super(testName);
+    }
+    
+    public void test_can_find_all_matches() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("number","(?<INTEGER>[0-9]+)(?:\\.(?<FRACTION>[0-9]+))?");
+        Expression expr = ctxt.compile("(?<KEY>[a-z]+)=${number}");
+        
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 100; i++) {
+            sb.append("k").append(i % 2 == 0 ? "a" : "b").append("=").append(i);
+            if (i % 3 == 0) {
+                sb.append(".5");
+            }
+            sb.append("; ");
+        }
+        String text = sb.toString();
+        
+        ExpressionMatches matches = expr.findAll(new StringBuilder(text));
+        assertEquals(100, matches.size());
+        assertEquals(expr.matcher(text).groupCount(), matches.groupCount());
+        
+        int fraction = matches.groupIndex("FRACTION");
+        int[] starts = matches.starts(fraction);
+        assertEquals(100, starts.length);
+        assertTrue(starts[0] > 0);
+        assertEquals(-1, starts[1]);
+        
+        //Cursor and matcher must agree on everything
+        ExpressionMatches.Cursor cursor = matches.cursor();
+        ExpressionMatcher matcher = expr.matcher(text);
+        while (matcher.find()) {
+            assertTrue(cursor.next());
+            for(int group = 0; group < matcher.groupCount(); group++) {
+                assertEquals(matcher.start(group), cursor.start(group));
+                assertEquals(matcher.end(group), cursor.end(group));
+                assertEquals(matcher.group(group), cursor.group(group));
+            }
+            assertEquals(matcher.group("KEY"), cursor.group("KEY"));
+            assertEquals(matcher.subMatch("number").group("INTEGER"), cursor.subMatch("number").group("INTEGER"));
+        }
+        assertFalse(cursor.next());
+        
+        cursor.moveTo(3);
+        assertEquals("kb", cursor.group("KEY"));
+        assertEquals("3", cursor.group("INTEGER"));
+        assertEquals("5", matches.group(3, fraction));
+        
+        assertEquals(0, expr.findAll("nothing here").size());
+    }
+}
@@ -0,0 +1,110 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionMetricsTest extends TestCase {
+    
+    public ExpressionMetricsTest(String testName) {
+        super(testName);
+    }
+    
+    public void test_can_collect_metrics() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("numbers","[0-9]+");
+        ExpressionMetrics metrics = new ExpressionMetrics();
+        ctxt.addListener(metrics);
+        
+        Expression expr = ctxt.compile("(?<NUM>${numbers})");
+        ExpressionMatcher matcher = expr.matcher(" 1 22 333");
+        while (matcher.find()) {
+            
+        }
+        assertFalse(matcher.lookingAt());
+        assertTrue(matcher.find(2));
+        
+        //Expressions with the same text share metrics
+        assertTrue(ctxt.compile("(?<NUM>${numbers})").matcher("4").find());
+        
+        ExpressionMetrics.Stats stats = metrics.stats(expr);
+        assertEquals(7, stats.searchCount());
+        assertEquals(5, stats.hitCount());
+        assertEquals(2, stats.missCount());
+        assertEquals(2, stats.compileCount());
+        assertEquals("(([0-9]+))".length(), stats.patternLength());
+        assertTrue(stats.compileNanos() > 0);
+        
+        long total = 0;
+        for(long count:stats.histogram()) {
+            total += count;
+        }
+        assertEquals(7, total);
+        assertEquals(1, metrics.stats().size());
+    }
+    
+    public void test_can_name_expressions() {
+        final ExpressionContext tenant1 = new ExpressionContext();
+        final ExpressionContext tenant2 = new ExpressionContext();
+        ExpressionMetrics metrics = new ExpressionMetrics(new Function<Expression, String>() {
+            public String apply(Expression expression) {
+                //Only measure the expressions of tenant1
+                return expression.expression().startsWith("${") ? "tenant1:" + expression.expression() : null;
+            }
+        });
+        tenant1.addListener(metrics);
+        tenant1.add("id","[0-9]+");
+        
+        ExpressionMetrics other = new ExpressionMetrics();
+        tenant2.addListener(other);
+        tenant2.add("id","[a-z]+");
+        
+        assertTrue(tenant1.compile("${id}").matcher("1").find());
+        assertTrue(tenant1.compile("x").matcher("x").find());
+        assertTrue(tenant2.compile("${id}").matcher("a").find());
+        
+        assertEquals(Collections.singleton("tenant1:${id}"), metrics.stats().keySet());
+        assertEquals(1, metrics.stats("tenant1:${id}").searchCount());
+        assertEquals(1, metrics.stats(tenant1.compile("${id}")).searchCount());
+        assertNull(metrics.stats(tenant1.compile("x")));
+        assertEquals(1, other.stats("${id}").searchCount());
+        
+        assertNotNull(metrics.remove("tenant1:${id}"));
+        assertTrue(metrics.stats().isEmpty());
+    }
+    
+    public void test_can_remove_listeners() {
+        final List<String> events = new ArrayList<String>();
+        ExpressionListener listener = new ExpressionListener() {
+            public void compiled(Expression expression, long nanos, int patternLength) {
+                events.add("compiled " + expression);
+            }
+
+            public void searched(Expression expression, boolean found, long nanos) {
+                events.add("searched " + expression + " " + found);
+            }
+        };
+        
+        ExpressionContext ctxt = new ExpressionContext();
+        ExpressionMetrics metrics = new ExpressionMetrics();
+        ctxt.addListener(metrics);
+        ctxt.addListener(listener);
+        
+        assertTrue(ctxt.compile("a").matcher("a").find());
+        assertEquals(2, events.size());
+        assertEquals("searched a true", events.get(1));
+        assertEquals(1, metrics.stats(ctxt.compile("a")).searchCount());
+        
+        ctxt.removeListener(listener);
+        ctxt.removeListener(metrics);
+        assertTrue(ctxt.compile("b").matcher("b").find());
+        assertEquals(2, events.size());
+        assertNull(metrics.stats(ctxt.compile("b")));
+    }
+}
@@ -0,0 +1,95 @@
+package com.vonhof.matchit;
+
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionParserTest extends TestCase {
+
+    public ExpressionParserTest(String testName) {
+        super(testName);
+    }
+
+    public void test_can_parse_expression_tree() {
+        List<ExpressionParser.Node> nodes = ExpressionParser.parse("a(?<NAME>b${sub}(?:c|${range(1,2)}))\\$\\{x}");
+        assertEquals(3, nodes.size());
+        assertEquals("a", ((ExpressionParser.Text) nodes.get(0)).text);
+        assertEquals("\\$\\{x}", ((ExpressionParser.Text) nodes.get(2)).text);
+
+        ExpressionParser.Group named = (ExpressionParser.Group) nodes.get(1);
+        assertTrue(named.capturing);
+        assertEquals("NAME", named.name);
+        assertEquals(3, named.children.size());
+        assertEquals("sub", ((ExpressionParser.Reference) named.children.get(1)).id);
+
+        ExpressionParser.Group nonCapturing = (ExpressionParser.Group) named.children.get(2);
+        assertFalse(nonCapturing.capturing);
+        assertEquals("(?:", nonCapturing.open);
+
+        ExpressionParser.Function range = (ExpressionParser.Function) nonCapturing.children.get(1);
+        assertEquals("range", range.id);
+        assertEquals(2, range.args.length);
+    }
+
+    public void test_can_ignore_escaped_and_quoted_parentheses() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("num","(?<N>[0-9]+)");
+
+        Expression expr = ctxt.compile("\\\\(y)\\((?<x>[(a-c)]+)\\Q(${num})\\E_(?i)(?<=_)${num}");
+        assertEquals("(?uis)\\\\(y)\\(([(a-c)]+)\\Q(${num})\\E_(?i)(?<=_)(([0-9]+))", expr.pattern());
+
+        ExpressionMatcher matcher = expr.matcher("\\y((ab)(${num})_42");
+        assertTrue(matcher.find());
+        assertEquals("y", matcher.group(1));
+        assertEquals("(ab)", matcher.group("x"));
+        assertEquals("42", matcher.group("N"));
+        assertEquals("42", matcher.subMatch("num").group("N"));
+    }
+
+    public void test_can_report_unbalanced_expressions() {
+        try {
+            ExpressionParser.parse("(a|b");
+            fail("Unclosed group should fail");
+        } catch (ExpressionException ex) {
+
+        }
+        try {
+            ExpressionParser.parse("a)");
+            fail("Unbalanced parenthesis should fail");
+        } catch (ExpressionException ex) {
+
+        }
+        try {
+            ExpressionParser.parse("[a-z");
+            fail("Unclosed class should fail");
+        } catch (ExpressionException ex) {
+
+        }
+    }
+
+    public void test_can_compile_large_expressions_in_linear_time() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("word","(?<WORD>[a-z]+)");
+
+        StringBuilder sb = new StringBuilder("^(?:");
+        for(int i = 0; i < 20000; i++) {
+            if (i > 0) {
+                sb.append("|");
+            }
+            sb.append("(?<G").append(i).append(">${word}_").append(i).append(")");
+        }
+        sb.append(")$");
+
+        long start = System.currentTimeMillis();
+        Expression expr = ctxt.compile(sb.toString()).compile();
+        assertTrue(System.currentTimeMillis() - start < 10000);
+
+        ExpressionMatcher matcher = expr.matcher("abc_19999");
+        assertTrue(matcher.find());
+        assertEquals("abc_19999", matcher.group("G19999"));
+        assertEquals(60001, matcher.groupCount());
+    }
+}
@@ -0,0 +1,205 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionProcessorTest extends TestCase {
+
+    public ExpressionProcessorTest(String testName) {
+        super(testName);
+    }
+
+    private List<String> lines(int count) {
+        List<String> out = new ArrayList<String>();
+        for(int i = 0; i < count; i++) {
+            out.add(String.format("%d %s id=%d", i, i % 3 == 0 ? "ERROR" : "INFO", i));
+        }
+        return out;
+    }
+
+    public void test_can_publish_matches_on_demand() {
+        ListPublisher publisher = new ListPublisher(lines(100));
+        ExpressionProcessor processor = new ExpressionProcessor(Expression.compile("id=(?<ID>\\d+)"))
+                                            .useBatchSize(10)
+                                            .usePrefetch(8);
+        publisher.subscribe(processor);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+
+        //Nothing requested - only prefetched
+        assertEquals(8, publisher.requested);
+        assertTrue(collector.batches.isEmpty());
+
+        collector.subscription.request(1);
+        assertEquals(1, collector.batches.size());
+        assertEquals(10, collector.batches.get(0).size());
+        assertTrue(publisher.requested <= 16);
+
+        collector.subscription.request(Long.MAX_VALUE);
+        assertTrue(collector.completed);
+
+        List<String> ids = new ArrayList<String>();
+        for(List<ExpressionProcessor.Result> batch:collector.batches) {
+            assertTrue(batch.size() <= 10);
+            for(ExpressionProcessor.Result result:batch) {
+                assertEquals(ids.size(), result.record());
+                ids.add(result.match().group("ID"));
+            }
+        }
+        assertEquals(100, ids.size());
+        assertEquals("99", ids.get(99));
+    }
+
+    public void test_can_publish_rule_matches() throws InterruptedException {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("error","ERROR");
+        ctxt.add("id","id=(?<ID>\\d+)");
+
+        ExpressionProcessor processor = new ExpressionProcessor(ctxt.compileSet("error","id")).useBatchSize(7);
+        Collector collector = new Collector();
+        collector.unbounded = true;
+        processor.subscribe(collector);
+
+        SubmissionPublisher<CharSequence> publisher = new SubmissionPublisher<CharSequence>();
+        publisher.subscribe(processor);
+        for(String line:lines(30)) {
+            publisher.submit(line);
+        }
+        publisher.close();
+        assertTrue(collector.latch.await(10, TimeUnit.SECONDS));
+
+        int errors = 0;
+        int ids = 0;
+        for(List<ExpressionProcessor.Result> batch:collector.batches) {
+            for(ExpressionProcessor.Result result:batch) {
+                if (result.id().equals("error")) {
+                    assertEquals(0, result.record() % 3);
+                    errors++;
+                } else {
+                    assertEquals(String.valueOf(result.record()), result.match().group("ID"));
+                    ids++;
+                }
+            }
+        }
+        assertEquals(10, errors);
+        assertEquals(30, ids);
+    }
+
+    public void test_can_fail_on_invalid_request() {
+        ListPublisher publisher = new ListPublisher(lines(10));
+        ExpressionProcessor processor = new ExpressionProcessor(Expression.compile("id"));
+        publisher.subscribe(processor);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+
+        collector.subscription.request(0);
+        assertTrue(collector.error instanceof IllegalArgumentException);
+        assertTrue(publisher.cancelled);
+    }
+
+    public void test_rejects_null_records() {
+        ListPublisher publisher = new ListPublisher(lines(10));
+        ExpressionProcessor processor = new ExpressionProcessor(Expression.compile("id=(?<ID>\\d+)"));
+        publisher.subscribe(processor);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+
+        try {
+            processor.onNext(null);
+            fail("Null record should be rejected");
+        } catch (NullPointerException ex) {
+
+        }
+        assertNull(collector.error);
+        assertFalse(publisher.cancelled);
+
+        collector.subscription.request(Long.MAX_VALUE);
+        assertTrue(collector.completed);
+        assertEquals(10, collector.batches.get(0).size());
+    }
+
+    /**
+     * Publishes a list synchronously on request
+     */
+    private static final class ListPublisher implements Flow.Publisher<CharSequence> {
+        private final List<String> items;
+        private long requested = 0;
+        private boolean cancelled = false;
+
+        private ListPublisher(List<String> items) {
+            this.items = items;
+        }
+
+        public void subscribe(final Flow.Subscriber<? super CharSequence> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private int next = 0;
+                private long demand = 0;
+                private boolean emitting = false;
+
+                public void request(long n) {
+                    requested += n;
+                    demand += n;
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while (demand > 0 && next < items.size() && !cancelled) {
+                        demand--;
+                        subscriber.onNext(items.get(next++));
+                    }
+                    if (next == items.size() && !cancelled) {
+                        next++;
+                        subscriber.onComplete();
+                    }
+                    emitting = false;
+                }
+
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    private static final class Collector implements Flow.Subscriber<List<ExpressionProcessor.Result>> {
+        private final List<List<ExpressionProcessor.Result>> batches = 
+                new ArrayList<List<ExpressionProcessor.Result>>();
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        private boolean unbounded = false;
+        private volatile boolean completed = false;
+        private volatile Throwable error;
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (unbounded) {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        public void onNext(List<ExpressionProcessor.Result> item) {
+            synchronized (batches) {
+                batches.add(item);
+            }
+        }
+
+        public void onError(Throwable throwable) {
+            error = throwable;
+            latch.countDown();
+        }
+
+        public void onComplete() {
+            completed = true;
+            latch.countDown();
+        }
+    }
+}
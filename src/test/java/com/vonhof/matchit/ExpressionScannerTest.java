@@ -0,0 +1,166 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionScannerTest extends TestCase {
+    
+    public ExpressionScannerTest(String testName) {
+        super(testName);
+    }
+    
+    private String text() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 2000; i++) {
+            sb.append("id=").append(i).append(" value=");
+            for(int x = 0; x < i % 13; x++) {
+                sb.append('a');
+            }
+            sb.append(i % 5 == 0 ? "\n" : "; ");
+        }
+        return sb.toString();
+    }
+    
+    private List<String> sequential(Expression expr, String text) {
+        List<String> out = new ArrayList<String>();
+        ExpressionMatcher matcher = expr.matcher(text);
+        while (matcher.find()) {
+            out.add(matcher.start() + "-" + matcher.end() + ":" + matcher.group());
+        }
+        return out;
+    }
+    
+    private List<String> toStrings(List<ExpressionMatch> matches) {
+        List<String> out = new ArrayList<String>();
+        for(ExpressionMatch match:matches) {
+            out.add(match.start() + "-" + match.end() + ":" + match.group());
+        }
+        return out;
+    }
+    
+    public void test_parallel_scan_equals_sequential_find() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("numbers","[0-9]+");
+        
+        String text = text();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for(String pattern : new String[]{"id=(?<ID>${numbers})", "a+", "[^;\\n]+", "a*", "x?", "(?<=value=)a{3}"}) {
+                Expression expr = ctxt.compile(pattern);
+                List<String> expected = sequential(expr, text);
+                for(int segmentSize : new int[]{1, 17, 500, 100000}) {
+                    List<String> actual = toStrings(expr.scanner()
+                                                .usePool(pool)
+                                                .useSegmentSize(segmentSize)
+                                                .useOverlap(64)
+                                                .scan(text));
+                    assertEquals(pattern + " with segment size " + segmentSize, expected, actual);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    public void test_parallel_scan_on_line_boundaries() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("numbers","[0-9]+");
+        Expression expr = ctxt.compile("id=(?<ID>${numbers}) value=(?<VALUE>[a]*)");
+        
+        String text = text();
+        List<ExpressionMatch> matches = expr.scanner().useSegmentSize(100).useLineBoundaries(true).scan(text);
+        
+        assertEquals(sequential(expr, text), toStrings(matches));
+        assertEquals("1999", matches.get(matches.size() - 1).group("ID"));
+        assertEquals(toStrings(matches), toStrings(expr.parallelFind(text)));
+    }
+    
+    public void test_can_stream_matches_in_parallel() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("numbers","[0-9]+");
+        
+        String text = text();
+        for(String pattern : new String[]{"id=(?<ID>${numbers})", "a+", "[^;\\n]+", "a*", "(?<=value=)a{3}"}) {
+            Expression expr = ctxt.compile(pattern);
+            List<String> expected = sequential(expr, text);
+            assertEquals(pattern, expected, toStrings(expr.matches(text).collect(Collectors.<ExpressionMatch>toList())));
+            
+            for(boolean lines : new boolean[]{false, true}) {
+                ExpressionScanner scanner = expr.scanner().useSegmentSize(50).useOverlap(64).useLineBoundaries(lines);
+                List<ExpressionMatch> actual = scanner.matches(text).parallel()
+                                                    .collect(Collectors.<ExpressionMatch>toList());
+                assertEquals(pattern, expected, toStrings(actual));
+            }
+        }
+        
+        Spliterator<ExpressionMatch> parts = ctxt.compile("a+").scanner().useSegmentSize(50).matches(text).spliterator();
+        assertNotNull(parts.trySplit());
+        assertEquals("2", ctxt.compile("id=(?<ID>${numbers})").matches(text).skip(2).findFirst().get().group("ID"));
+    }
+    
+    public void test_can_split_in_parallel() {
+        String text = text();
+        for(String pattern : new String[]{";\\s*", "\\n", "a+", "value="}) {
+            Expression expr = Expression.compile(pattern);
+            List<String> expected = Arrays.asList(Pattern.compile("(?uis)" + pattern).split(text, -1));
+            
+            assertEquals(pattern, expected, expr.split(text).collect(Collectors.<String>toList()));
+            List<String> actual = expr.scanner().useSegmentSize(50).useOverlap(64)
+                                        .split(text).parallel().collect(Collectors.<String>toList());
+            assertEquals(pattern, expected, actual);
+        }
+        assertEquals(Arrays.asList("", "b", ""), Expression.compile("a").split("aba").collect(Collectors.<String>toList()));
+        assertEquals(Arrays.asList("nothing"), Expression.compile("a").split("nothing").collect(Collectors.<String>toList()));
+        
+        //Zero width matches at the start make no leading empty string
+        for(String pattern : new String[]{"x*", "(?=b)", "\\b"}) {
+            assertEquals(pattern, Arrays.asList("abc".split(pattern, -1)), 
+                    Expression.compile(pattern).split("abc").collect(Collectors.<String>toList()));
+        }
+    }
+
+    public void test_parallel_streams_keep_sequential_alignment() {
+        StringBuilder repeated = new StringBuilder();
+        for(int i = 0; i < 200001; i++) {
+            repeated.append('a');
+        }
+        
+        //Runs of a's of varying (odd and even) length - so the alignment of "aa" differs between runs
+        StringBuilder runs = new StringBuilder();
+        for(int i = 0; i < 3000; i++) {
+            for(int x = 0; x < 1 + (i * 7) % 23; x++) {
+                runs.append('a');
+            }
+            runs.append(i % 50 == 0 ? "bbbb" : "b");
+        }
+        
+        for(String text : new String[]{repeated.toString(), runs.toString()}) {
+            for(String pattern : new String[]{"aa", "a{1,3}b?", "(?<=a)a"}) {
+                Expression expr = Expression.compile(pattern);
+                ExpressionScanner scanner = expr.scanner().useSegmentSize(1000).useOverlap(101);
+                
+                List<String> expected = sequential(expr, text);
+                List<ExpressionMatch> actual = scanner.matches(text).parallel()
+                                                    .collect(Collectors.<ExpressionMatch>toList());
+                assertEquals(pattern, expected, toStrings(actual));
+                
+                List<String> tokens = Arrays.asList(Pattern.compile("(?uis)" + pattern).split(text, -1));
+                assertEquals(pattern, tokens, scanner.split(text).parallel().collect(Collectors.<String>toList()));
+            }
+        }
+        
+        Spliterator<ExpressionMatch> parts = Expression.compile("aa").scanner().useSegmentSize(1000).useOverlap(101)
+                                                .matches(runs).spliterator();
+        assertNotNull(parts.trySplit());
+    }
+}
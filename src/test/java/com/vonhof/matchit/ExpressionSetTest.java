@@ -0,0 +1,103 @@
+package com.vonhof.matchit;
+
+import java.util.Arrays;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionSetTest extends TestCase {
+    
+    public ExpressionSetTest(String testName) {
+        super(testName);
+    }
+    
+    private ExpressionContext context() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("numbers","[0-9]+");
+        ctxt.add("user","user=(?<NAME>[a-z]+)");
+        ctxt.add("error","ERROR (?<CODE>${numbers})");
+        ctxt.add("port","port (?<PORT>${numbers})");
+        ctxt.add("port","(?<HOST>[a-z]+):(?<PORT>${numbers})");
+        return ctxt;
+    }
+    
+    public void test_can_match_all_rules_in_one_pass() {
+        ExpressionSet set = context().compileSet("user", "error", "port");
+        
+        ExpressionSetMatcher matcher = set.matcher("user=bob got ERROR 42 from host:8080");
+        
+        assertTrue(matcher.find());
+        assertEquals("user", matcher.id());
+        assertEquals("bob", matcher.match().group("NAME"));
+        
+        assertTrue(matcher.find());
+        assertEquals("error", matcher.id());
+        ExpressionMatch error = matcher.match();
+        assertEquals("ERROR 42", error.group());
+        assertEquals("42", error.group("CODE"));
+        assertEquals(19, error.start("CODE"));
+        assertEquals("42", error.subMatch("numbers").group());
+        
+        assertTrue(matcher.find());
+        assertEquals("port", matcher.id());
+        ExpressionMatch port = matcher.match();
+        assertEquals("host", port.group("HOST"));
+        assertEquals("8080", port.group("PORT"));
+        
+        assertFalse(matcher.find());
+    }
+    
+    public void test_can_list_matching_ids() {
+        ExpressionSet set = context().compileSet("user", "error", "port");
+        
+        assertEquals(Arrays.asList("user", "error", "port"), set.ids());
+        
+        Set<String> ids = set.matchingIds("port 22 and ERROR 1");
+        assertEquals(Arrays.asList("port", "error"), Arrays.asList(ids.toArray()));
+        
+        assertTrue(set.matchingIds("nothing to see here").isEmpty());
+    }
+    
+    public void test_can_match_overlapping_rules() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("err","ERROR");
+        ctxt.add("code","ERROR (?<C>[0-9]+)");
+        ctxt.add("user","user=(?<N>[a-z]+)");
+        ctxt.add("any","[a-z]+=");
+        ExpressionSet set = ctxt.compileSet("err", "code", "user", "any");
+        
+        String text = "ERROR 42 user=bob";
+        assertEquals(Arrays.asList("err", "code", "user", "any"), Arrays.asList(set.matchingIds(text).toArray()));
+        
+        ExpressionSetMatcher matcher = set.matcher(text);
+        assertTrue(matcher.find());
+        assertEquals("err", matcher.id());
+        assertEquals("ERROR", matcher.group());
+        assertTrue(matcher.find());
+        assertEquals("code", matcher.id());
+        assertEquals("42", matcher.match().group("C"));
+        assertTrue(matcher.find());
+        assertEquals("user", matcher.id());
+        assertEquals("bob", matcher.match().group("N"));
+        assertTrue(matcher.find());
+        assertEquals("any", matcher.id());
+        assertEquals(9, matcher.start());
+        assertEquals("user=", matcher.group());
+        assertFalse(matcher.find());
+        
+        //Rules without their required literals in the text are not matched - rules without literals always are
+        assertEquals(Arrays.asList("any"), Arrays.asList(set.matchingIds("id=1").toArray()));
+    }
+    
+    public void test_fails_on_missing_expression() {
+        try {
+            context().compileSet("user", "missing");
+            fail("Expected exception");
+        } catch (ExpressionException ex) {
+            //Expected
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.vonhof.matchit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionSnapshotTest extends TestCase {
+
+    public ExpressionSnapshotTest(String testName) {
+        super(testName);
+    }
+
+    private ExpressionContext context() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("range",new ExpressionFunction.Range());
+        ctxt.add("ab","${a}(?<BNAME>${b})");
+        ctxt.add("a","(?<ANAME>a+)");
+        ctxt.add("a","(?<ANAME2>A+)");
+        ctxt.add("b","b|B");
+        ctxt.add("year","${range(2000,2012)}");
+        return ctxt;
+    }
+
+    private void assertSameExpressions(ExpressionContext expected, ExpressionContext actual) {
+        String text = "${ab} (?<YEAR>${year})";
+        assertEquals(expected.ids(), actual.ids());
+        assertEquals(expected.compile(text).pattern(), actual.compile(text).pattern());
+
+        ExpressionMatcher matcher = actual.compile(text).matcher("AAB 2010");
+        assertTrue(matcher.find());
+        assertEquals("2010", matcher.group("YEAR"));
+        assertEquals("B", matcher.subMatch("ab").group("BNAME"));
+        assertEquals("AA", matcher.subMatch("ab").subMatch("a").group("ANAME"));
+        assertEquals(expected.get("ab"), matcher.expression().getSubExpressions().get("ab"));
+    }
+
+    public void test_can_save_and_load_snapshot() throws IOException {
+        ExpressionContext ctxt = context();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ctxt.save(out);
+
+        //Functions are not needed to use the snapshot
+        ExpressionContext loaded = new ExpressionContext();
+        loaded.load(new ByteArrayInputStream(out.toByteArray()));
+
+        assertSameExpressions(ctxt, loaded);
+
+        Expression year = loaded.get("year").iterator().next();
+        assertEquals("(?uis)(?:200[0-9]|201[0-2])", year.pattern());
+    }
+
+    public void test_can_load_snapshot_file() throws IOException {
+        ExpressionContext ctxt = context();
+        File file = File.createTempFile("matchit", ".snapshot");
+        try {
+            ctxt.save(file);
+
+            ExpressionContext loaded = new ExpressionContext();
+            loaded.load(file);
+            assertSameExpressions(ctxt, loaded);
+
+            //Changes after loading are picked up
+            loaded.add("b","c");
+            ExpressionMatcher matcher = loaded.compile("${ab}").matcher("aac");
+            assertTrue(matcher.find());
+            assertEquals("c", matcher.group("BNAME"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void test_can_reject_invalid_snapshots() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        context().save(out);
+        byte[] bytes = out.toByteArray();
+
+        ExpressionContext truncated = new ExpressionContext();
+        try {
+            truncated.load(new ByteArrayInputStream(bytes, 0, bytes.length - 3));
+            fail("Truncated snapshot should fail");
+        } catch (IOException ex) {
+
+        }
+        assertTrue(truncated.ids().isEmpty());
+
+        try {
+            new ExpressionContext().load(new ByteArrayInputStream(bytes, 4, bytes.length - 4));
+            fail("Snapshot without header should fail");
+        } catch (IOException ex) {
+
+        }
+
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("a","x");
+        try {
+            ctxt.load(new ByteArrayInputStream(bytes));
+            fail("Snapshot redefining expressions should fail");
+        } catch (ExpressionException ex) {
+
+        }
+        //Nothing is loaded - not even the expressions read before the one already defined
+        assertEquals(Collections.singleton("a"), ctxt.ids());
+        assertEquals(1, ctxt.get("a").size());
+    }
+
+    public void test_can_reject_corrupt_snapshots() throws IOException {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("a","(?<A>a)");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ctxt.save(out);
+        byte[] bytes = out.toByteArray();
+
+        //Find the offsets of the counts and groups of the single expression in the snapshot
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int count = 8;
+        buffer.position(count + 4);
+        skipString(buffer);
+        int definitions = buffer.position();
+        buffer.getInt();
+        skipString(buffer);
+        skipString(buffer);
+        int groupCount = buffer.position();
+        buffer.getInt();
+        int groupNames = buffer.position();
+        buffer.getInt();
+        int group = buffer.position();
+        assertEquals(1, buffer.getInt());
+
+        assertCorrupt(bytes, count, -1);
+        assertCorrupt(bytes, count, Integer.MAX_VALUE);
+        assertCorrupt(bytes, definitions, -1);
+        assertCorrupt(bytes, definitions, 0);
+        assertCorrupt(bytes, definitions, Integer.MAX_VALUE);
+        assertCorrupt(bytes, groupCount, -1);
+        assertCorrupt(bytes, groupCount, 1);
+        assertCorrupt(bytes, groupNames, -1);
+        assertCorrupt(bytes, group, -1);
+        assertCorrupt(bytes, group, 2);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+
+    private static void assertCorrupt(byte[] bytes, int offset, int value) {
+        byte[] corrupt = bytes.clone();
+        ByteBuffer.wrap(corrupt).putInt(offset, value);
+        ExpressionContext ctxt = new ExpressionContext();
+        try {
+            ctxt.load(new ByteArrayInputStream(corrupt));
+            fail(String.format("Snapshot with %d at %d should fail", value, offset));
+        } catch (IOException ex) {
+
+        }
+        assertTrue(ctxt.ids().isEmpty());
+    }
+}
@@ -0,0 +1,108 @@
+package com.vonhof.matchit;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionStreamMatcherTest extends TestCase {
+    
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    public ExpressionStreamMatcherTest(String testName) {
+        super(testName);
+    }
+    
+    private Expression expression() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("numbers","[0-9]+");
+        return ctxt.compile("(?<KEY>[a-zæøå]+)=(?<VALUE>${numbers})");
+    }
+    
+    private String text() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 500; i++) {
+            sb.append("line ").append(i).append(": æøå").append(i % 7).append("=").append(i * 31).append("\n");
+            if (i % 50 == 0) {
+                sb.append("multi\nline=12\n34 ");
+            }
+        }
+        return sb.toString();
+    }
+    
+    private List<String> expected(Expression expr, String text) {
+        List<String> out = new ArrayList<String>();
+        ExpressionMatcher matcher = expr.matcher(text);
+        while (matcher.find()) {
+            out.add(matcher.start() + ":" + matcher.group("KEY") + "=" + matcher.group("VALUE"));
+        }
+        return out;
+    }
+    
+    private List<String> actual(ExpressionStreamMatcher matcher) {
+        List<String> out = new ArrayList<String>();
+        while (matcher.find()) {
+            out.add(matcher.absoluteStart() + ":" + matcher.group("KEY") + "=" + matcher.group("VALUE"));
+            assertEquals(matcher.absoluteStart() + matcher.group().length(), matcher.absoluteEnd());
+        }
+        return out;
+    }
+    
+    public void test_can_match_across_chunks() {
+        Expression expr = expression().compile();
+        String text = text();
+        
+        for(int chunkSize : new int[]{1, 7, 64, 100000}) {
+            ExpressionStreamMatcher matcher = new ExpressionStreamMatcher(expr, new StringReader(text), 32, chunkSize);
+            assertEquals("Chunk size " + chunkSize, expected(expr, text), actual(matcher));
+        }
+    }
+    
+    public void test_can_match_channel() {
+        Expression expr = expression();
+        String text = text();
+        
+        ExpressionStreamMatcher matcher = expr.matcher(
+                Channels.newChannel(new ByteArrayInputStream(text.getBytes(UTF8))), UTF8, 32);
+        assertEquals(expected(expr, text), actual(matcher));
+    }
+    
+    public void test_can_match_mapped_file() throws Exception {
+        Expression expr = expression();
+        String text = text();
+        
+        File file = File.createTempFile("matchit", ".txt");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(text.getBytes(UTF8));
+            } finally {
+                out.close();
+            }
+            
+            ExpressionStreamMatcher matcher = expr.matcher(file, UTF8, 32);
+            try {
+                assertEquals(expected(expr, text), actual(matcher));
+            } finally {
+                matcher.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+    
+    public void test_can_match_empty_stream() {
+        ExpressionStreamMatcher matcher = expression().matcher(new StringReader(""));
+        assertFalse(matcher.find());
+        assertFalse(matcher.find());
+    }
+}
@@ -0,0 +1,68 @@
+package com.vonhof.matchit;
+
+import java.io.StringWriter;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class ExpressionTemplateTest extends TestCase {
+
+    public ExpressionTemplateTest(String testName) {
+        super(testName);
+    }
+
+    private ExpressionContext context() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("num","(?<digits>[0-9]+)");
+        ctxt.add("ab","(?<a>[a-c]+)-(?<b>${num})");
+        ctxt.add("ab","(?<b>[x-z]+)");
+        return ctxt;
+    }
+
+    public void test_can_replace_named_groups() {
+        Expression expr = context().compile("user=(?<user>\\w+) pin=(?<num>${num})");
+
+        assertEquals("user=*** pin=[1234] and user=*** pin=[42]", 
+                     expr.replaceAll("user=henrik pin=1234 and user=bob pin=42", "user=*** pin=[${num}]"));
+        assertEquals("bob:42 - user=henrik pin=1234", 
+                     expr.replaceFirst("user=bob pin=42 - user=henrik pin=1234", "${user}:${digits}"));
+        assertEquals("no match", expr.replaceAll("no match", "${user}"));
+        assertEquals("$bob \\${user}", expr.replaceAll("user=bob pin=1", "$${user} \\\\\\${user}"));
+    }
+
+    public void test_can_replace_sub_expressions() {
+        Expression expr = context().compile("<${ab}>");
+        ExpressionTemplate template = expr.template("${ab}|${ab.b}|${ab.num.digits}|${ab.1}");
+
+        StringWriter out = new StringWriter();
+        try {
+            expr.replaceAll("<abc-12> <zz>", template, out);
+        } catch (java.io.IOException ex) {
+            fail(ex.getMessage());
+        }
+        assertEquals("abc-12|12|12|abc zz|zz||zz", out.toString());
+    }
+
+    public void test_can_fail_on_unknown_groups() {
+        Expression expr = context().compile("<${ab}>");
+        try {
+            expr.template("${ab.c}");
+            fail("Expected exception");
+        } catch (ExpressionException ex) {
+        }
+        try {
+            expr.template("${nope");
+            fail("Expected exception");
+        } catch (ExpressionException ex) {
+        }
+        try {
+            context().compile("<${ab}>").replaceAll("", expr.template("${ab}"), new StringBuilder());
+            fail("Expected exception");
+        } catch (IllegalArgumentException ex) {
+        } catch (java.io.IOException ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
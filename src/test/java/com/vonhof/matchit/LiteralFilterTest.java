@@ -0,0 +1,133 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class LiteralFilterTest extends TestCase {
+
+    private static final String[] PATTERNS = {
+        "(?uis)user=(\\w+)",
+        "(?uis)(?:error|warn) (\\w+)",
+        "(?uis)\\d+ ms",
+        "(?uis)a\\d*b",
+        "(?uis)\\bkey\\b",
+        "(?uis)(?<=k)ey",
+        "(?uis)ab|cd",
+        "(?uis)colou?r",
+        "(?uis)\\Qa.b\\E+",
+        "(?uis)(?-i)ABC",
+        "(?uis)(ab){2}c",
+        "(?uis)\\x41\\u0042c",
+        "(?uis)strasse|k",
+        "(?uis)^ab",
+        "(?uis)[a-c]+b",
+    };
+
+    private static final String[] INPUTS = {
+        "", "user=bob", "USER=Bob user=x", "error disk warn x WARN y", "12 ms 3ms 4 MS", "a123b ab axb",
+        "key monkey KEY", "ab cd abcd", "color colour COLOUR", "a.b a.bb axb", "abc ABC AbC", "ababc abab",
+        "ABC", "STRASSE K", "xab ab", "ccb abcb",
+    };
+
+    public LiteralFilterTest(String testName) {
+        super(testName);
+    }
+
+    private List<String> matches(EngineMatcher m, String input) {
+        List<String> out = new ArrayList<String>();
+        while (m.find()) {
+            out.add(m.start() + "-" + m.end() + ":" + m.group());
+        }
+        for(int offset = 0; offset <= input.length(); offset += 3) {
+            if (m.find(offset)) {
+                out.add("find(" + offset + ") " + m.start() + "-" + m.end());
+            }
+        }
+        m.region(Math.min(1, input.length()), input.length());
+        while (m.find()) {
+            out.add("region " + m.start() + "-" + m.end());
+        }
+        if (m.lookingAt()) {
+            out.add("lookingAt " + m.start() + "-" + m.end());
+        }
+        return out;
+    }
+
+    public void test_can_find_required_literals() {
+        LiteralFilter filter = LiteralFilter.compile("(?uis)USER=(?<NAME>\\w+)");
+        assertEquals(Arrays.asList("user="), filter.literals());
+        assertTrue(filter.prefix);
+
+        filter = LiteralFilter.compile("(?uis)\\d{4}-\\d\\d (?:ERROR|WARN) ");
+        assertEquals(Arrays.asList("error", "warn"), filter.literals());
+        assertFalse(filter.prefix);
+
+        filter = LiteralFilter.compile("(?uis)(?:ERROR|WARN): \\w+");
+        assertEquals(Arrays.asList("error", "warn"), filter.literals());
+        assertTrue(filter.prefix);
+
+        assertNull(LiteralFilter.compile("(?uis)a*b?"));
+        assertNull(LiteralFilter.compile("(?uis)abc|"));
+        assertNull(LiteralFilter.compile("(?x)a b"));
+        assertNull(LiteralFilter.compile("\\Gab"));
+    }
+
+    public void test_can_match_like_unfiltered_pattern() {
+        for(MatchEngine engine:new MatchEngine[] {MatchEngine.BACKTRACKING, MatchEngine.AUTO}) {
+            for(String pattern:PATTERNS) {
+                EnginePattern unfiltered = engine.compile(pattern);
+                EnginePattern filtered = LiteralFilter.filter(unfiltered);
+                assertNotSame(pattern, unfiltered, filtered);
+                for(String input:INPUTS) {
+                    assertEquals(pattern + " on " + input,
+                            matches(unfiltered.matcher(input), input),
+                            matches(filtered.matcher(input), input));
+                }
+            }
+        }
+    }
+
+    public void test_can_match_random_input() {
+        Random random = new Random(42);
+        for(String pattern:PATTERNS) {
+            EnginePattern unfiltered = MatchEngine.BACKTRACKING.compile(pattern);
+            EnginePattern filtered = LiteralFilter.filter(unfiltered);
+            for(int i = 0; i < 50; i++) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(30);
+                for(int x = 0; x < length; x++) {
+                    sb.append("abcKkeyABusr= 1".charAt(random.nextInt(15)));
+                }
+                String input = sb.toString();
+                assertEquals(pattern + " on " + input,
+                        matches(unfiltered.matcher(input), input),
+                        matches(filtered.matcher(input), input));
+            }
+        }
+    }
+
+    public void test_can_skip_lines_without_literals() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("user","user=(?<USER>\\w+)");
+
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 1000; i++) {
+            sb.append("2024-01-01 GET /index.html status=200\n");
+        }
+        sb.append("2024-01-01 GET /login USER=Alice\n");
+
+        Expression expr = ctxt.compile("${user}");
+        ExpressionMatcher matcher = expr.matcher(sb.toString());
+        assertTrue(matcher.find());
+        assertEquals("Alice", matcher.group("USER"));
+        assertFalse(matcher.find());
+        assertFalse(expr.matcher(sb.toString().replace("USER", "name")).find());
+    }
+}
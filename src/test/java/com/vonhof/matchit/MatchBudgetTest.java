@@ -0,0 +1,90 @@
+package com.vonhof.matchit;
+
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class MatchBudgetTest extends TestCase {
+    
+    public MatchBudgetTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Expression and text that takes forever to (not) match with backtracking
+     */
+    private ExpressionMatcher catastrophic(MatchBudget budget) {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.setEngine(MatchEngine.BACKTRACKING);
+        ctxt.add("as","(?:a|a)+");
+        ctxt.setBudget(budget);
+        return ctxt.compile("(${as})+b").matcher("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaac ab");
+    }
+    
+    public void test_can_abort_search_after_steps() {
+        ExpressionMatcher matcher = catastrophic(MatchBudget.steps(100000));
+        try {
+            matcher.find();
+            fail("Search should be aborted");
+        } catch (MatchAbortedException ex) {
+            assertEquals(MatchAbortedException.Reason.STEPS, ex.getReason());
+            assertEquals(100000, ex.getSteps());
+            assertTrue(ex.getPosition() >= 0 && ex.getPosition() <= 40);
+        }
+    }
+    
+    public void test_can_abort_search_after_time() {
+        ExpressionMatcher matcher = catastrophic(MatchBudget.time(50, TimeUnit.MILLISECONDS));
+        try {
+            matcher.find();
+            fail("Search should be aborted");
+        } catch (MatchAbortedException ex) {
+            assertEquals(MatchAbortedException.Reason.TIME, ex.getReason());
+            assertTrue(ex.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+    
+    public void test_can_abort_interrupted_search() {
+        ExpressionMatcher matcher = catastrophic(MatchBudget.time(1, TimeUnit.HOURS));
+        Thread.currentThread().interrupt();
+        try {
+            matcher.find();
+            fail("Search should be aborted");
+        } catch (MatchAbortedException ex) {
+            assertEquals(MatchAbortedException.Reason.INTERRUPTED, ex.getReason());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+    
+    public void test_can_match_within_budget() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("numbers","(?<NUM>[0-9]+)");
+        Expression expr = ctxt.compile("${numbers}");
+        
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 1000; i++) {
+            sb.append(i).append(' ');
+        }
+        
+        //Each search gets the full budget
+        ExpressionMatcher matcher = expr.matcher(sb.toString(), MatchBudget.steps(20));
+        int found = 0;
+        while (matcher.find()) {
+            assertEquals(String.valueOf(found), matcher.group("NUM"));
+            found++;
+        }
+        assertEquals(1000, found);
+        
+        assertTrue(expr.matcher("123", MatchBudget.steps(20)).lookingAt());
+        try {
+            expr.matcher("                         123", MatchBudget.steps(20)).find();
+            fail("Search should be aborted");
+        } catch (MatchAbortedException ex) {
+            assertEquals(MatchAbortedException.Reason.STEPS, ex.getReason());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class MatchEngineTest extends TestCase {
+    
+    private static final String[] PATTERNS = {
+        "(?uis)abc",
+        "(?uis)a|ab|abc",
+        "(?uis)(a|ab)(c|bcd)(d*)",
+        "(?uis)([a-c]+)(b?)c",
+        "(?uis)(a+?)(b*?)c",
+        "(?uis)x{2,3}y{0,2}",
+        "(?uis)((a)|(b))+c",
+        "(?uis)(?:(a)|b)*?c",
+        "(?uis)[^a-c\\s]+",
+        "(?uis)\\d+[.,]\\d{2}",
+        "(?uis)\\w+@\\w+\\.com",
+        "(?uis)^a.c",
+        "(?uis)b.$",
+        "(?uis)\\Aab|c\\z",
+        "(?uis)(?i:X)(?-i:x)",
+        "(?:A)(?u)æ(?s).",
+        "(?uis)[]a]+",
+        "(?uis)\\Qa.c\\E+",
+        "(?uis)\\x{61}\\u0062\\0143",
+        "(?uis)\\p{Lu}+",
+        "(?uis)(?<NAME>a)(b)",
+        "(?uis)()a",
+        "(?uis)(a?)b",
+        "(?uis).*c",
+        "(?uis)(?:ab|a)(?:bc|c)",
+    };
+    
+    private static final String[] INPUTS = {
+        "", "a", "abc", "abcd", "xxabcabcxx", "ab\nc", "aAbBcC", "ABC\n", "xxxyyyxxy", "12.34 5,67 8.9",
+        "me@host.com you@HOST.COM", "bbbac", "aabbcc", "æÆøØ", "a.ca.cc", "]]a]", "abc\r\n", "æx\nX",
+    };
+    
+    public MatchEngineTest(String testName) {
+        super(testName);
+    }
+    
+    private List<String> matches(MatchEngine engine, String pattern, String input) {
+        List<String> out = new ArrayList<String>();
+        EngineMatcher m = engine.compile(pattern).matcher(input);
+        while (m.find()) {
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i <= m.groupCount(); i++) {
+                sb.append(m.start(i)).append("-").append(m.end(i)).append(":").append(m.group(i)).append(" ");
+            }
+            out.add(sb.toString());
+        }
+        out.add("hitEnd=" + m.hitEnd());
+        if (m.lookingAt()) {
+            out.add("lookingAt " + m.start() + "-" + m.end());
+        }
+        return out;
+    }
+    
+    public void test_linear_engine_matches_like_backtracking_engine() {
+        for(String pattern:PATTERNS) {
+            assertSame(pattern, MatchEngine.LINEAR, MatchEngine.LINEAR.compile(pattern).engine());
+            for(String input:INPUTS) {
+                assertEquals(pattern + " on " + input, 
+                        matches(MatchEngine.BACKTRACKING, pattern, input), 
+                        matches(MatchEngine.LINEAR, pattern, input));
+            }
+        }
+    }
+    
+    public void test_linear_engine_matches_random_input() {
+        Random random = new Random(42);
+        for(String pattern:PATTERNS) {
+            for(int i = 0; i < 50; i++) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(20);
+                for(int x = 0; x < length; x++) {
+                    sb.append("abcxyAB.\n 1"
+                              .charAt(random.nextInt(11)));
+                }
+                String input = sb.toString();
+                assertEquals(pattern + " on " + input, 
+                        matches(MatchEngine.BACKTRACKING, pattern, input), 
+                        matches(MatchEngine.LINEAR, pattern, input));
+            }
+        }
+    }
+    
+    public void test_linear_engine_reports_groups_of_last_iteration() {
+        String pattern = "(?:[^a](?<N>[ab]){1,3}){2}";
+        EngineMatcher backtracking = MatchEngine.BACKTRACKING.compile(pattern).matcher("xabyb");
+        EngineMatcher linear = MatchEngine.LINEAR.compile(pattern).matcher("xabyb");
+        assertTrue(backtracking.find());
+        assertTrue(linear.find());
+        assertEquals(backtracking.group(), linear.group());
+        assertEquals(2, backtracking.start(1));
+        assertEquals(4, linear.start(1));
+        
+        //AUTO matches a variable outer repeat with the linear engine
+        EngineMatcher auto = MatchEngine.AUTO.compile("(?:[^a](?<N>[ab]){1,3})+").matcher("xabyb");
+        assertTrue(auto.find());
+        assertEquals(4, auto.start(1));
+    }
+    
+    public void test_linear_engine_supports_regions() {
+        EngineMatcher backtracking = MatchEngine.BACKTRACKING.compile("(?uis)b+").matcher("abbba");
+        EngineMatcher linear = MatchEngine.LINEAR.compile("(?uis)b+").matcher("abbba");
+        backtracking.region(2, 4);
+        linear.region(2, 4);
+        assertTrue(backtracking.find());
+        assertTrue(linear.find());
+        assertEquals("bb", linear.group());
+        assertEquals(backtracking.start(), linear.start());
+        assertEquals(backtracking.hitEnd(), linear.hitEnd());
+        assertFalse(backtracking.find());
+        assertFalse(linear.find());
+    }
+    
+    public void test_auto_engine_falls_back_to_backtracking() {
+        String[] unsupported = {
+            "(a)\\1", "a(?=b)", "(?<!a)b", "(?>a)", "a++", "\\bword\\b", "(?m)^a", "(a*)*b", "(?x)a b", "a\\Z"
+        };
+        for(String pattern:unsupported) {
+            assertSame(pattern, MatchEngine.BACKTRACKING, MatchEngine.AUTO.compile(pattern).engine());
+            try {
+                MatchEngine.LINEAR.compile(pattern);
+                fail("Expected exception for " + pattern);
+            } catch (ExpressionException ex) {
+                //Expected
+            }
+        }
+    }
+    
+    public void test_auto_engine_uses_linear_engine_for_ambiguous_quantifiers() {
+        String[] ambiguous = {"(a+)+b", "(?:a|ab)*c", "(?:\\w+\\s?)+!", "(?:a?b){1,5}"};
+        for(String pattern:ambiguous) {
+            assertSame(pattern, MatchEngine.LINEAR, MatchEngine.AUTO.compile(pattern).engine());
+        }
+        String[] plain = {"abc", "(a|ab)(c|bcd)(d*)", "\\d+[.,]\\d{2}", "(?:\\d+\\.){3}\\d+", "(?<NAME>\\w+)=.*"};
+        for(String pattern:plain) {
+            assertSame(pattern, MatchEngine.BACKTRACKING, MatchEngine.AUTO.compile(pattern).engine());
+        }
+        assertSame(MatchEngine.BACKTRACKING, new ExpressionContext().compile("(a+)+b").engine());
+    }
+    
+    public void test_linear_engine_is_linear_on_nested_quantifiers() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.setEngine(MatchEngine.AUTO);
+        ctxt.add("word","[a-z]+");
+        Expression expr = ctxt.compile("(?:${word}\\s?)+!");
+        assertSame(MatchEngine.LINEAR, expr.engine());
+        
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 20000; i++) {
+            sb.append('a');
+        }
+        //Exponential for a backtracking engine
+        long start = System.nanoTime();
+        assertFalse(expr.matcher(sb.toString()).lookingAt());
+        assertTrue(System.nanoTime() - start < 10000000000L);
+    }
+    
+    public void test_context_engine_is_used_for_expressions() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("numbers","(?<NUM>[0-9]+)");
+        ctxt.setEngine(MatchEngine.BACKTRACKING);
+        
+        Expression expr = ctxt.compile("${numbers}");
+        assertSame(MatchEngine.BACKTRACKING, expr.engine());
+        
+        ExpressionMatcher matcher = expr.matcher("a 12");
+        assertTrue(matcher.find());
+        assertEquals("12", matcher.group("NUM"));
+    }
+}
@@ -0,0 +1,134 @@
+package com.vonhof.matchit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Henrik Hofmeister <@vonhofdk>
+ */
+public class MatchingServiceTest extends TestCase {
+
+    public MatchingServiceTest(String testName) {
+        super(testName);
+    }
+
+    private ExpressionContext context() {
+        ExpressionContext ctxt = new ExpressionContext();
+        ctxt.add("tenant1","id=(?<ID>\\d+)");
+        ctxt.add("tenant2","user=(?<USER>\\w+)");
+        return ctxt;
+    }
+
+    public void test_can_match_batch_of_jobs() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            MatchingService service = new MatchingService(context()).useExecutor(executor).useConcurrency(3);
+
+            List<MatchingService.Job> jobs = new ArrayList<MatchingService.Job>();
+            for(int i = 0; i < 1000; i++) {
+                jobs.add(new MatchingService.Job(i % 2 == 0 ? "tenant1" : "tenant2",
+                                                String.format("id=%d user=u%d id=%d", i, i, i + 1)));
+            }
+
+            List<ExpressionMatches> results = service.submitAll(jobs).get(10, TimeUnit.SECONDS);
+            assertEquals(1000, results.size());
+            for(int i = 0; i < results.size(); i++) {
+                ExpressionMatches matches = results.get(i);
+                if (i % 2 == 0) {
+                    assertEquals(2, matches.size());
+                    assertEquals(String.valueOf(i), matches.group(0, matches.groupIndex("ID")));
+                    assertEquals(String.valueOf(i + 1), matches.group(1, matches.groupIndex("ID")));
+                } else {
+                    assertEquals(1, matches.size());
+                    assertEquals("u" + i, matches.group(0, matches.groupIndex("USER")));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void test_can_fail_unknown_expression() throws Exception {
+        MatchingService service = new MatchingService(context());
+        try {
+            CompletableFuture<ExpressionMatches> result = service.submit("tenant3", "id=1");
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail("Unknown expression should fail");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof ExpressionException);
+            }
+            assertEquals(1, service.submit("tenant1", "id=1").get(10, TimeUnit.SECONDS).size());
+        } finally {
+            service.close();
+        }
+    }
+
+    public void test_can_recompile_when_context_changes() throws Exception {
+        ExpressionContext ctxt = context();
+        MatchingService service = new MatchingService(ctxt);
+        try {
+            assertEquals(0, service.submit("tenant1", "id=a").get(10, TimeUnit.SECONDS).size());
+            ctxt.add("tenant1","id=(?<ID>[a-z]+)");
+            assertEquals(1, service.submit("tenant1", "id=a").get(10, TimeUnit.SECONDS).size());
+        } finally {
+            service.close();
+        }
+    }
+
+    public void test_never_keeps_stale_expressions() throws Exception {
+        ExpressionContext ctxt = context();
+        ctxt.add("versions","v0");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        MatchingService service = new MatchingService(ctxt).useExecutor(executor).useConcurrency(4);
+        try {
+            for(int i = 1; i < 200; i++) {
+                //Compile while the context is modified
+                List<CompletableFuture<ExpressionMatches>> pending = new ArrayList<CompletableFuture<ExpressionMatches>>();
+                for(int j = 0; j < 8; j++) {
+                    pending.add(service.submit("versions", "v0"));
+                }
+                ctxt.add("versions","v" + i);
+                for(CompletableFuture<ExpressionMatches> result:pending) {
+                    result.get(10, TimeUnit.SECONDS);
+                }
+                for(int j = 0; j < 4; j++) {
+                    assertEquals(1, service.submit("versions", "v" + i).get(10, TimeUnit.SECONDS).size());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void test_can_fail_job_with_error_and_continue() throws Exception {
+        ExpressionContext ctxt = context();
+        ctxt.setEngine(MatchEngine.BACKTRACKING);
+        ctxt.add("deep","(?:a|b)*c");
+        MatchingService service = new MatchingService(ctxt).useConcurrency(1);
+        try {
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < 200000; i++) {
+                sb.append(i % 2 == 0 ? 'a' : 'b');
+            }
+            sb.append('c');
+            try {
+                service.submit("deep", sb).get(10, TimeUnit.SECONDS);
+                fail("Stack overflow should fail the job");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof StackOverflowError);
+            }
+            assertEquals(1, service.submit("deep", "c").get(10, TimeUnit.SECONDS).size());
+            assertEquals(1, service.submit("tenant1", "id=1").get(10, TimeUnit.SECONDS).size());
+        } finally {
+            service.close();
+        }
+    }
+}